@@ -0,0 +1,64 @@
+package com.accounting.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * 流式 JSON 响应
+ * 记录边读边经 JsonGenerator 写入响应体，每 FLUSH_EVERY 条刷新一次，
+ * 不在内存中汇总整个结果集。序列化使用 Spring 注入的 ObjectMapper，输出格式与普通响应一致。
+ */
+final class JsonStreams {
+    private static final int FLUSH_EVERY = 100;
+
+    /**
+     * 响应体写入逻辑；rows 写出一条记录（数组元素或字段值）
+     */
+    interface Body {
+        void write(JsonGenerator gen, Consumer<Object> rows) throws IOException;
+    }
+
+    private JsonStreams() {
+    }
+
+    /**
+     * 顶层为数组的响应：source 把每条记录交给传入的 Consumer
+     */
+    static ResponseEntity<StreamingResponseBody> array(ObjectMapper mapper, Consumer<Consumer<Object>> source) {
+        return of(mapper, (gen, rows) -> {
+            gen.writeStartArray();
+            source.accept(rows);
+            gen.writeEndArray();
+        });
+    }
+
+    static ResponseEntity<StreamingResponseBody> of(ObjectMapper mapper, Body body) {
+        StreamingResponseBody stream = out -> {
+            try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+                // 输出流由 Spring 负责关闭
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                int[] written = {0};
+                body.write(gen, row -> {
+                    try {
+                        gen.writeObject(row);
+                        if (++written[0] % FLUSH_EVERY == 0) {
+                            gen.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(stream);
+    }
+}
@@ -1,7 +1,10 @@
 package com.accounting.api;
 
+import com.accounting.service.MonthlyRollupService;
+import com.accounting.service.StatisticCache;
 import com.accounting.service.StatisticService;
 import com.accounting.service.TransactionService;
+import com.accounting.stats.MonthlyAggregates;
 import com.accounting.storage.StorageManager;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -9,27 +12,32 @@ import org.springframework.web.bind.annotation.*;
 import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 @RestController
 @RequestMapping("/api/stats")
 public class StatsController {
     private final StatisticService statisticService;
+    private final MonthlyRollupService monthlyRollupService;
+    private final StatisticCache statisticCache;
 
-    public StatsController(StatisticService statisticService) {
+    public StatsController(StatisticService statisticService, MonthlyRollupService monthlyRollupService,
+                           StatisticCache statisticCache) {
         this.statisticService = statisticService;
+        this.monthlyRollupService = monthlyRollupService;
+        this.statisticCache = statisticCache;
     }
 
     @GetMapping("/monthly")
     public ResponseEntity<Map<String, Object>> monthly(@RequestParam(defaultValue = "12") int months,
                                                        Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        Map<YearMonth, Double> expenses = statisticService.getMonthlyExpenses(user, months);
-        Map<YearMonth, Double> income = statisticService.getMonthlyIncome(user, months);
-        List<YearMonth> order = expenses.keySet().stream().sorted().toList();
+        MonthlyAggregates agg = statisticService.getMonthlyAggregates(user, months);
+        List<Integer> order = IntStream.range(0, agg.months()).boxed().toList();
         return ResponseEntity.ok(Map.of(
-                "months", order.stream().map(ym -> ym.getYear()+"-"+String.format("%02d", ym.getMonthValue())).toList(),
-                "expenses", order.stream().map(expenses::get).toList(),
-                "income", order.stream().map(income::get).toList()
+                "months", order.stream().map(agg::month).map(ym -> ym.getYear()+"-"+String.format("%02d", ym.getMonthValue())).toList(),
+                "expenses", order.stream().map(agg::expense).toList(),
+                "income", order.stream().map(agg::income).toList()
         ));
     }
 
@@ -66,4 +74,30 @@ public class StatsController {
         Map<String, Object> m = statisticService.getMonthlyStatistics(user, year, month);
         return ResponseEntity.ok(m);
     }
+
+    // 仪表盘和趋势页的全部统计一次返回；year、month 缺省为本月
+    @GetMapping("/dashboard")
+    public ResponseEntity<Map<String, Object>> dashboard(@RequestParam(defaultValue = "12") int months,
+                                                         @RequestParam(required = false) Integer year,
+                                                         @RequestParam(required = false) Integer month,
+                                                         Authentication auth) {
+        String user = auth != null ? auth.getName() : null;
+        YearMonth now = YearMonth.now();
+        YearMonth ym = YearMonth.of(year != null ? year : now.getYear(), month != null ? month : now.getMonthValue());
+        return ResponseEntity.ok(statisticService.getDashboard(user, months, ym));
+    }
+
+    // 按账目表重建当前用户的月度汇总行，返回修正的行数
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRollup(Authentication auth) {
+        String user = auth != null ? auth.getName() : null;
+        int repaired = monthlyRollupService.rebuild(user);
+        return ResponseEntity.ok(Map.of("repaired", repaired));
+    }
+
+    // 统计结果缓存的命中、未命中和淘汰计数
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(statisticCache.stats());
+    }
 }
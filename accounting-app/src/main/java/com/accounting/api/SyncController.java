@@ -3,10 +3,12 @@ package com.accounting.api;
 import com.accounting.model.Transaction;
 import com.accounting.service.SyncService;
 import com.accounting.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -17,19 +19,29 @@ public class SyncController {
 
     private final SyncService syncService;
     private final TransactionService transactionService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public SyncController(SyncService syncService, TransactionService transactionService) {
+    public SyncController(SyncService syncService, TransactionService transactionService, ObjectMapper objectMapper) {
         this.syncService = syncService;
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
     }
 
+    // 变更逐条流式写出，格式同 SyncService.pull：{changes, current_version}
     @GetMapping
-    public ResponseEntity<Map<String, Object>> pull(
+    public ResponseEntity<StreamingResponseBody> pull(
             @RequestParam(name = "last_version", defaultValue = "0") Long lastVersion,
             Authentication auth) {
         String userId = auth != null ? auth.getName() : null;
-        return ResponseEntity.ok(syncService.pull(userId, lastVersion));
+        return JsonStreams.of(objectMapper, (gen, rows) -> {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("changes");
+            Long currentVersion = syncService.streamPull(userId, lastVersion, rows);
+            gen.writeEndArray();
+            gen.writeNumberField("current_version", currentVersion);
+            gen.writeEndObject();
+        });
     }
 
     @PostMapping
@@ -41,20 +53,30 @@ public class SyncController {
     }
 
     // 兼容桌面客户端：获取当前用户的账单列表
+    // 带 limit 或 cursor 参数时分页返回 {items, next_cursor}，不带时流式写出完整数组
     @GetMapping("/transactions")
-    public ResponseEntity<List<Transaction>> listTransactions(Authentication auth) {
+    public ResponseEntity<?> listTransactions(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            Authentication auth) {
         String userId = auth != null ? auth.getName() : null;
-        List<Transaction> list = transactionService.getTransactionsByUserId(userId);
-        return ResponseEntity.ok(list);
+        if (limit == null && cursor == null) {
+            return JsonStreams.array(objectMapper, rows -> transactionService.streamTransactionsForUser(userId, null, rows));
+        }
+        try {
+            int size = limit != null ? limit : TransactionService.MAX_PAGE_SIZE;
+            return ResponseEntity.ok(transactionService.pageTransactionsForUser(userId, null, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     // 兼容桌面客户端：上传账单列表并返回当前用户账单
     @PostMapping("/transactions/upload")
-    public ResponseEntity<List<Transaction>> uploadTransactions(@RequestBody List<Transaction> incoming,
-                                                                Authentication auth) {
+    public ResponseEntity<StreamingResponseBody> uploadTransactions(@RequestBody List<Transaction> incoming,
+                                                                    Authentication auth) {
         String userId = auth != null ? auth.getName() : null;
         syncService.push(userId, incoming);
-        List<Transaction> list = transactionService.getTransactionsByUserId(userId);
-        return ResponseEntity.ok(list);
+        return JsonStreams.array(objectMapper, rows -> transactionService.streamTransactionsForUser(userId, null, rows));
     }
 }
@@ -1,25 +1,37 @@
 package com.accounting.api;
 
 import com.accounting.model.Transaction;
+import com.accounting.model.TransactionSummary;
 import com.accounting.service.TransactionService;
 import com.accounting.storage.StorageManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionsController {
+    private static final int DEFAULT_PAGE_SIZE = 50;
     private final TransactionService transactionService;
+    private final ObjectMapper objectMapper;
 
-    public TransactionsController(TransactionService transactionService) {
+    public TransactionsController(TransactionService transactionService, ObjectMapper objectMapper) {
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * 账目列表；带 limit 或 cursor 参数时按 (date, id) 倒序分页，返回 {items, next_cursor}，
+     * 不带时以流式写出完整数组以兼容旧客户端。
+     * fields 为逗号分隔的摘要字段（见 TransactionSummary.FIELDS），给出时只查询并返回这些字段
+     */
     @GetMapping
-    public ResponseEntity<List<Transaction>> list(
+    public ResponseEntity<?> list(
             @RequestParam(required = false) String categoryId,
             @RequestParam(required = false) String type,
             @RequestParam(required = false) String start,
@@ -27,9 +39,11 @@ public class TransactionsController {
             @RequestParam(required = false) Double min,
             @RequestParam(required = false) Double max,
             @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
             Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        List<Transaction> base = transactionService.getTransactionsByUserId(user);
         com.accounting.filter.FilterRule rule = com.accounting.filter.FilterRule.byKeyword(q);
         if (categoryId != null && !categoryId.isBlank()) {
             rule = rule.and(com.accounting.filter.FilterRule.byCategory(categoryId));
@@ -52,8 +66,57 @@ public class TransactionsController {
                 rule = rule.and(com.accounting.filter.FilterRule.dateRange(s, e));
             } catch (Exception ignored) {}
         }
-        List<Transaction> filtered = base.stream().filter(rule::test).toList();
-        return ResponseEntity.ok(filtered);
+        if (fields != null) {
+            return listSummaries(user, rule, fields, limit, cursor);
+        }
+        if (limit == null && cursor == null) {
+            com.accounting.filter.FilterRule filter = rule;
+            return JsonStreams.array(objectMapper, rows -> transactionService.streamTransactionsForUser(user, filter, rows));
+        }
+        try {
+            int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+            return ResponseEntity.ok(transactionService.pageTransactionsForUser(user, rule, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private ResponseEntity<?> listSummaries(String user, com.accounting.filter.FilterRule rule, String fields,
+                                            Integer limit, String cursor) {
+        List<String> selected = List.of(fields.split(",")).stream().map(String::trim).filter(f -> !f.isEmpty()).distinct().toList();
+        if (selected.isEmpty() || !TransactionSummary.FIELDS.containsAll(selected)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit == null && cursor == null) {
+            return JsonStreams.array(objectMapper, rows ->
+                transactionService.streamSummariesForUser(user, rule, s -> rows.accept(project(s, selected))));
+        }
+        try {
+            int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+            Map<String, Object> page = transactionService.pageSummariesForUser(user, rule, cursor, size);
+            @SuppressWarnings("unchecked")
+            List<TransactionSummary> items = (List<TransactionSummary>) page.get("items");
+            page.put("items", items.stream().map(s -> project(s, selected)).toList());
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // 按请求的字段顺序取出摘要字段
+    private static Map<String, Object> project(TransactionSummary s, List<String> fields) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String f : fields) {
+            switch (f) {
+                case "id" -> row.put(f, s.id());
+                case "date" -> row.put(f, s.date());
+                case "amount" -> row.put(f, s.amount());
+                case "type" -> row.put(f, s.type());
+                case "categoryId" -> row.put(f, s.categoryId());
+                default -> throw new IllegalArgumentException(f);
+            }
+        }
+        return row;
     }
 
     @GetMapping("/{id}")
@@ -1,12 +1,14 @@
 package com.accounting.chart;
 
 import com.accounting.service.local.LocalStatisticService;
+import com.accounting.stats.MonthlyAggregates;
 import java.time.YearMonth;
 import java.time.Year;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import com.accounting.model.Transaction;
 
 public class ChartAnalyzer {
@@ -34,10 +36,9 @@ public class ChartAnalyzer {
     }
     
     public List<Double> monthlyNetSeries(String userId, int months) {
-        Map<YearMonth, Double> expenses = statisticService.getMonthlyExpenses(userId, months);
-        Map<YearMonth, Double> incomes = statisticService.getMonthlyIncome(userId, months);
-        return expenses.keySet().stream().sorted()
-            .map(ym -> incomes.getOrDefault(ym, 0.0) - expenses.getOrDefault(ym, 0.0))
+        MonthlyAggregates agg = statisticService.getMonthlyAggregates(userId, months);
+        return IntStream.range(0, agg.months())
+            .mapToObj(i -> agg.income(i) - agg.expense(i))
             .collect(Collectors.toList());
     }
     
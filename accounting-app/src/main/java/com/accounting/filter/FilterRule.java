@@ -2,19 +2,73 @@ package com.accounting.filter;
 
 import com.accounting.model.Transaction;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
  * 筛选规则类
  * 使用策略模式实现多条件过滤
+ * 除内存谓词外，每条规则还记录结构化描述（种类 + 参数 + 子规则），
+ * 服务端据此把过滤条件编译为 SQL（见 TransactionSpecifications）
+ * 每条规则带有估计的单行检查代价和选择性（通过比例），AND 按 代价/(1-选择性) 从小到大检查合取项，
+ * 便宜且过滤掉更多行的条件先执行，与组合顺序无关；withStatistics 可按用户数据重新估计后再排序
  */
 public class FilterRule {
+    /**
+     * 规则种类
+     */
+    public enum Kind {
+        ALL, DATE_RANGE, CATEGORY, TYPE, AMOUNT_RANGE, KEYWORD, AND, OR, NOT
+    }
+    
     private Predicate<Transaction> predicate;
     private String description;
+    private final Kind kind;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private String categoryId;
+    private Transaction.TransactionType type;
+    private double minAmount;
+    private double maxAmount;
+    private String keyword;
+    private List<FilterRule> children = Collections.emptyList();
+    // 单行检查的相对代价（类型比较为 1）和估计的通过比例
+    private double cost;
+    private double selectivity;
+    
+    // 各类叶子的默认估计，没有统计信息时使用。
+    // 代价：对 20 万条合成记录逐条单独检查各类叶子，耗时相对类型比较取整得到（金额为两次 double 比较，
+    // 与类型相当；分类为字符串 equals；日期为两次 LocalDateTime 比较；关键字每行把描述和标签转小写再查找）。
+    // 只用于排序，量级对即可，不必精确。
+    // 选择性：没有数据时的先验。类型只有支出/收入两种取 0.5；分类按常见的十个左右分类取 0.1；
+    // 关键字一般只命中少数记录取 0.1；日期和金额范围无从判断，取 0.5。有 FilterStatistics 时以统计为准
+    private static final double COST_TYPE = 1;
+    private static final double COST_CATEGORY = 2;
+    private static final double COST_AMOUNT = 1;
+    private static final double COST_DATE = 3;
+    private static final double COST_KEYWORD = 30;
+    private static final double DEFAULT_SELECTIVITY = 0.5;
+    private static final double DEFAULT_CATEGORY_SELECTIVITY = 0.1;
+    private static final double DEFAULT_KEYWORD_SELECTIVITY = 0.1;
     
-    private FilterRule(Predicate<Transaction> predicate, String description) {
+    // AND 中先检查的合取项
+    private static final Comparator<FilterRule> CONJUNCT_ORDER = Comparator.comparingDouble(FilterRule::getRank);
+    
+    private FilterRule(Kind kind, Predicate<Transaction> predicate, String description) {
+        this.kind = kind;
         this.predicate = predicate;
         this.description = description;
+        this.selectivity = 1;
+    }
+    
+    private FilterRule(Kind kind, Predicate<Transaction> predicate, String description, double cost, double selectivity) {
+        this(kind, predicate, description);
+        this.cost = cost;
+        this.selectivity = selectivity;
     }
     
     public boolean test(Transaction transaction) {
@@ -25,81 +79,276 @@ public class FilterRule {
         return description;
     }
     
+    public Kind getKind() {
+        return kind;
+    }
+    
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+    
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+    
+    public String getCategoryId() {
+        return categoryId;
+    }
+    
+    public Transaction.TransactionType getType() {
+        return type;
+    }
+    
+    public double getMinAmount() {
+        return minAmount;
+    }
+    
+    public double getMaxAmount() {
+        return maxAmount;
+    }
+    
+    public String getKeyword() {
+        return keyword;
+    }
+    
+    // AND/OR 的两个子规则，NOT 的一个子规则
+    public List<FilterRule> getChildren() {
+        return children;
+    }
+    
+    // 估计的单行检查代价（组合规则为按短路求值的期望代价）
+    public double getCost() {
+        return cost;
+    }
+    
+    // 估计的通过比例，0~1
+    public double getSelectivity() {
+        return selectivity;
+    }
+    
+    // 作为合取项的检查顺序：越小越先检查；恒真的条件排在最后
+    public double getRank() {
+        return selectivity >= 1 ? Double.POSITIVE_INFINITY : cost / (1 - selectivity);
+    }
+    
+    // 不过滤
+    public static FilterRule all() {
+        return new FilterRule(Kind.ALL, t -> true, "全部");
+    }
+    
     // 按日期范围筛选
     public static FilterRule dateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return new FilterRule(
+        FilterRule rule = new FilterRule(
+            Kind.DATE_RANGE,
             t -> {
                 if (t.getDate() == null) return false;
                 return !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate);
             },
-            "日期范围: " + startDate + " 至 " + endDate
+            "日期范围: " + startDate + " 至 " + endDate,
+            COST_DATE, DEFAULT_SELECTIVITY
         );
+        rule.startDate = startDate;
+        rule.endDate = endDate;
+        return rule;
     }
     
     // 按分类筛选
     public static FilterRule byCategory(String categoryId) {
-        return new FilterRule(
-            t -> categoryId == null || categoryId.equals(t.getCategoryId()),
-            "分类: " + categoryId
+        if (categoryId == null) {
+            return new FilterRule(Kind.ALL, t -> true, "分类: " + categoryId);
+        }
+        FilterRule rule = new FilterRule(
+            Kind.CATEGORY,
+            t -> categoryId.equals(t.getCategoryId()),
+            "分类: " + categoryId,
+            COST_CATEGORY, DEFAULT_CATEGORY_SELECTIVITY
         );
+        rule.categoryId = categoryId;
+        return rule;
     }
     
     // 按类型筛选（支出/收入）
     public static FilterRule byType(Transaction.TransactionType type) {
-        return new FilterRule(
-            t -> type == null || type.equals(t.getType()),
-            "类型: " + (type != null ? type.getDisplayName() : "全部")
+        if (type == null) {
+            return new FilterRule(Kind.ALL, t -> true, "类型: 全部");
+        }
+        FilterRule rule = new FilterRule(
+            Kind.TYPE,
+            t -> type.equals(t.getType()),
+            "类型: " + type.getDisplayName(),
+            COST_TYPE, DEFAULT_SELECTIVITY
         );
+        rule.type = type;
+        return rule;
     }
     
     // 按金额范围筛选
     public static FilterRule amountRange(double minAmount, double maxAmount) {
-        return new FilterRule(
+        FilterRule rule = new FilterRule(
+            Kind.AMOUNT_RANGE,
             t -> t.getAmount() >= minAmount && t.getAmount() <= maxAmount,
-            "金额范围: " + minAmount + " - " + maxAmount
+            "金额范围: " + minAmount + " - " + maxAmount,
+            COST_AMOUNT, DEFAULT_SELECTIVITY
         );
+        rule.minAmount = minAmount;
+        rule.maxAmount = maxAmount;
+        return rule;
     }
     
     // 按关键字筛选（描述、标签）
     public static FilterRule byKeyword(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) {
-            return new FilterRule(t -> true, "关键字: 无");
+            return new FilterRule(Kind.ALL, t -> true, "关键字: 无");
         }
         String lowerKeyword = keyword.toLowerCase();
-        return new FilterRule(
+        FilterRule rule = new FilterRule(
+            Kind.KEYWORD,
             t -> {
-                boolean matchDescription = t.getDescription() != null && 
+                boolean matchDescription = t.getDescription() != null &&
                     t.getDescription().toLowerCase().contains(lowerKeyword);
-                boolean matchTags = t.getTags() != null && 
+                boolean matchTags = t.getTags() != null &&
                     t.getTags().toLowerCase().contains(lowerKeyword);
                 return matchDescription || matchTags;
             },
-            "关键字: " + keyword
+            "关键字: " + keyword,
+            COST_KEYWORD, DEFAULT_KEYWORD_SELECTIVITY
         );
+        rule.keyword = lowerKeyword;
+        return rule;
     }
     
-    // 组合多个规则（AND逻辑）
+    // 组合多个规则（AND逻辑）；合取项按估计的代价和选择性重排检查顺序
     public FilterRule and(FilterRule other) {
-        return new FilterRule(
-            this.predicate.and(other.predicate),
+        FilterRule rule = new FilterRule(
+            Kind.AND,
+            null,
             this.description + " AND " + other.description
         );
+        rule.children = Arrays.asList(this, other);
+        rule.combine();
+        return rule;
     }
     
-    // 组合多个规则（OR逻辑）
+    // 组合多个规则（OR逻辑）；先检查 代价/选择性 较小的一侧
     public FilterRule or(FilterRule other) {
-        return new FilterRule(
-            this.predicate.or(other.predicate),
+        FilterRule rule = new FilterRule(
+            Kind.OR,
+            null,
             this.description + " OR " + other.description
         );
+        rule.children = Arrays.asList(this, other);
+        rule.combine();
+        return rule;
     }
     
     // 取反
     public FilterRule negate() {
-        return new FilterRule(
-            this.predicate.negate(),
+        FilterRule rule = new FilterRule(
+            Kind.NOT,
+            null,
             "NOT (" + this.description + ")"
         );
+        rule.children = Collections.singletonList(this);
+        rule.combine();
+        return rule;
+    }
+    
+    /**
+     * 按统计信息重新估计各叶子的选择性，返回重排检查顺序后的等价规则（原规则不变）
+     */
+    public FilterRule withStatistics(FilterStatistics statistics) {
+        FilterRule copy = new FilterRule(kind, predicate, description, cost, selectivity);
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.categoryId = categoryId;
+        copy.type = type;
+        copy.minAmount = minAmount;
+        copy.maxAmount = maxAmount;
+        copy.keyword = keyword;
+        if (children.isEmpty()) {
+            double estimate = statistics.estimate(this);
+            if (!Double.isNaN(estimate)) {
+                copy.selectivity = estimate;
+            }
+        } else {
+            List<FilterRule> mapped = new ArrayList<>(children.size());
+            for (FilterRule child : children) {
+                mapped.add(child.withStatistics(statistics));
+            }
+            copy.children = Collections.unmodifiableList(mapped);
+            copy.combine();
+        }
+        return copy;
+    }
+    
+    /**
+     * 由子规则生成组合规则的谓词、代价和选择性（按各子规则相互独立估计）
+     */
+    private void combine() {
+        switch (kind) {
+            case AND: {
+                List<FilterRule> terms = new ArrayList<>();
+                flattenAnd(this, terms);
+                // 排序稳定，估计相同的条件保持组合顺序
+                terms.sort(CONJUNCT_ORDER);
+                double expected = 0;
+                double pass = 1;
+                for (FilterRule term : terms) {
+                    expected += pass * term.cost;
+                    pass *= term.selectivity;
+                }
+                cost = expected;
+                selectivity = pass;
+                predicate = conjunction(terms);
+                break;
+            }
+            case OR: {
+                FilterRule a = children.get(0);
+                FilterRule b = children.get(1);
+                if (b.cost * a.selectivity < a.cost * b.selectivity) {
+                    FilterRule swap = a;
+                    a = b;
+                    b = swap;
+                }
+                cost = a.cost + (1 - a.selectivity) * b.cost;
+                selectivity = 1 - (1 - a.selectivity) * (1 - b.selectivity);
+                predicate = a.predicate.or(b.predicate);
+                break;
+            }
+            case NOT: {
+                FilterRule inner = children.get(0);
+                cost = inner.cost;
+                selectivity = 1 - inner.selectivity;
+                predicate = inner.predicate.negate();
+                break;
+            }
+            default:
+                break;
+        }
+    }
+    
+    // 展开嵌套的 AND，恒真的 ALL 不参与检查
+    private static void flattenAnd(FilterRule rule, List<FilterRule> out) {
+        if (rule.kind == Kind.AND) {
+            for (FilterRule child : rule.children) {
+                flattenAnd(child, out);
+            }
+        } else if (rule.kind != Kind.ALL) {
+            out.add(rule);
+        }
+    }
+    
+    private static Predicate<Transaction> conjunction(List<FilterRule> terms) {
+        if (terms.isEmpty()) {
+            return t -> true;
+        }
+        FilterRule[] checks = terms.toArray(new FilterRule[0]);
+        return t -> {
+            for (FilterRule check : checks) {
+                if (!check.predicate.test(t)) return false;
+            }
+            return true;
+        };
     }
 }
 
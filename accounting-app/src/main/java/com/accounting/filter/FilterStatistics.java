@@ -0,0 +1,115 @@
+package com.accounting.filter;
+
+import com.accounting.model.Transaction;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 过滤条件选择性估计用的统计信息
+ * 一次遍历记录得到：分类频次、类型频次、按天的日期直方图和金额抽样，
+ * 供 FilterRule.withStatistics 估计各叶子条件的通过比例。统计生成后不再修改。
+ */
+public final class FilterStatistics {
+    // 金额抽样的最大样本数
+    private static final int AMOUNT_SAMPLES = 1024;
+
+    private final int total;
+    private final Map<String, Integer> categoryCounts = new HashMap<>();
+    private final Map<Transaction.TransactionType, Integer> typeCounts = new EnumMap<>(Transaction.TransactionType.class);
+    // 有日期记录的日期（epochDay，升序去重）及截至当天的累计记录数
+    private final long[] days;
+    private final int[] cumulative;
+    // 金额升序样本
+    private final double[] amounts;
+
+    private FilterStatistics(Collection<Transaction> rows) {
+        total = rows.size();
+        int stride = Math.max(1, total / AMOUNT_SAMPLES);
+        double[] sample = new double[Math.min(total, AMOUNT_SAMPLES + 1)];
+        int sampled = 0;
+        TreeMap<Long, Integer> perDay = new TreeMap<>();
+        int i = 0;
+        for (Transaction t : rows) {
+            if (t.getCategoryId() != null) categoryCounts.merge(t.getCategoryId(), 1, Integer::sum);
+            if (t.getType() != null) typeCounts.merge(t.getType(), 1, Integer::sum);
+            if (t.getDate() != null) perDay.merge(t.getDate().toLocalDate().toEpochDay(), 1, Integer::sum);
+            if (i++ % stride == 0 && sampled < sample.length) sample[sampled++] = t.getAmount();
+        }
+        amounts = Arrays.copyOf(sample, sampled);
+        Arrays.sort(amounts);
+        days = new long[perDay.size()];
+        cumulative = new int[perDay.size()];
+        int k = 0;
+        int running = 0;
+        for (Map.Entry<Long, Integer> e : perDay.entrySet()) {
+            running += e.getValue();
+            days[k] = e.getKey();
+            cumulative[k++] = running;
+        }
+    }
+
+    public static FilterStatistics of(Collection<Transaction> rows) {
+        return new FilterStatistics(rows);
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * 估计叶子条件的通过比例；无法估计（如关键字或没有数据）时返回 NaN
+     */
+    public double estimate(FilterRule leaf) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        switch (leaf.getKind()) {
+            case ALL:
+                return 1;
+            case CATEGORY:
+                return (double) categoryCounts.getOrDefault(leaf.getCategoryId(), 0) / total;
+            case TYPE:
+                return (double) typeCounts.getOrDefault(leaf.getType(), 0) / total;
+            case DATE_RANGE:
+                return leaf.getStartDate() == null || leaf.getEndDate() == null ? Double.NaN
+                    : (double) countDays(leaf.getStartDate().toLocalDate(), leaf.getEndDate().toLocalDate()) / total;
+            case AMOUNT_RANGE:
+                return amountFraction(leaf.getMinAmount(), leaf.getMaxAmount());
+            default:
+                return Double.NaN;
+        }
+    }
+
+    // 日期落在 [from, to] 这些天内的记录数；首尾两天按整天计
+    private int countDays(LocalDate from, LocalDate to) {
+        int hi = upperBound(days, to.toEpochDay());
+        int lo = upperBound(days, from.toEpochDay() - 1);
+        if (hi <= lo) return 0;
+        return cumulative[hi - 1] - (lo > 0 ? cumulative[lo - 1] : 0);
+    }
+
+    private double amountFraction(double min, double max) {
+        if (amounts.length == 0 || Double.isNaN(min) || Double.isNaN(max)) return Double.NaN;
+        int lo = 0;
+        while (lo < amounts.length && amounts[lo] < min) lo++;
+        int hi = lo;
+        while (hi < amounts.length && amounts[hi] <= max) hi++;
+        return (double) (hi - lo) / amounts.length;
+    }
+
+    // 第一个 > key 的位置
+    private static int upperBound(long[] keys, long key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] > key) hi = mid; else lo = mid + 1;
+        }
+        return lo;
+    }
+}
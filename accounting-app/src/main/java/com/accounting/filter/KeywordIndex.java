@@ -0,0 +1,246 @@
+package com.accounting.filter;
+
+import com.accounting.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 描述/标签关键字倒排索引
+ * 文本统一转小写后切分为单字和相邻二字词元（中文按二元切分，其它文字同样处理），
+ * 词元 -> 文档号 的倒排表随增删改增量维护。查询时取关键字全部二元词元的倒排表求交，
+ * 再用缓存的小写文本确认子串命中，结果与 FilterRule.byKeyword 完全一致，
+ * 且查询过程不再为每行生成小写字符串。
+ *
+ * 非线程安全，由调用方加锁。
+ */
+public class KeywordIndex {
+    // 已删除文档数超过该值且超过存活数时重新编号
+    private static final int MIN_DEAD_DOCS = 1024;
+
+    /**
+     * 单个文档：记录本身和归一化后的文本
+     */
+    private static final class Doc {
+        final Transaction transaction;
+        final String description;
+        final String tags;
+
+        Doc(Transaction transaction) {
+            this.transaction = transaction;
+            this.description = normalize(transaction.getDescription());
+            this.tags = normalize(transaction.getTags());
+        }
+
+        boolean contains(String keyword) {
+            return (description != null && description.contains(keyword))
+                || (tags != null && tags.contains(keyword));
+        }
+    }
+
+    /**
+     * 升序文档号列表；文档号单调分配，追加即有序
+     */
+    private static final class Posting {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos < 0) return;
+            System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+            size--;
+        }
+
+        /**
+         * 从 from 开始第一个 >= doc 的位置；先倍增步长再二分
+         */
+        int seek(int from, int doc) {
+            int step = 1;
+            int hi = from;
+            while (hi < size && docs[hi] < doc) {
+                from = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, size);
+            while (from < hi) {
+                int mid = (from + hi) >>> 1;
+                if (docs[mid] < doc) from = mid + 1; else hi = mid;
+            }
+            return from;
+        }
+    }
+
+    private final Map<Integer, Posting> postings = new HashMap<>();
+    private final Map<String, Integer> idToDoc = new HashMap<>();
+    private final ArrayList<Doc> docs = new ArrayList<>();
+    private int deadDocs;
+
+    /**
+     * 插入或按ID替换
+     */
+    public void put(Transaction t) {
+        remove(t.getId());
+        int docNo = docs.size();
+        Doc doc = new Doc(t);
+        docs.add(doc);
+        idToDoc.put(t.getId(), docNo);
+        forEachToken(doc, key -> postings.computeIfAbsent(key, k -> new Posting()).add(docNo));
+    }
+
+    /**
+     * 按ID删除，返回是否存在
+     */
+    public boolean remove(String id) {
+        Integer docNo = idToDoc.remove(id);
+        if (docNo == null) {
+            return false;
+        }
+        Doc doc = docs.set(docNo, null);
+        forEachToken(doc, key -> {
+            Posting p = postings.get(key);
+            if (p != null) {
+                p.remove(docNo);
+                if (p.size == 0) postings.remove(key);
+            }
+        });
+        deadDocs++;
+        if (deadDocs > MIN_DEAD_DOCS && deadDocs > idToDoc.size()) {
+            renumber();
+        }
+        return true;
+    }
+
+    public void clear() {
+        postings.clear();
+        idToDoc.clear();
+        docs.clear();
+        deadDocs = 0;
+    }
+
+    public int size() {
+        return idToDoc.size();
+    }
+
+    /**
+     * 按关键字查询，语义同 FilterRule.byKeyword：描述或标签（忽略大小写）包含该关键字
+     * 关键字为空时返回全部记录；结果按插入顺序
+     */
+    public List<Transaction> search(String keyword) {
+        List<Transaction> result = new ArrayList<>();
+        String q = normalize(keyword);
+        if (q == null || q.trim().isEmpty()) {
+            for (Doc d : docs) {
+                if (d != null) result.add(d.transaction);
+            }
+            return result;
+        }
+
+        Posting[] lists = queryPostings(q);
+        if (lists == null) {
+            return result;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        // 单字或二字关键字只对应一个词元，倒排表即精确结果；更长的关键字各二元词元都命中不代表连续出现，需确认子串
+        boolean verify = q.length() > 2 || q.indexOf('\uFFFF') >= 0;
+        Posting driver = lists[0];
+        int[] cursors = new int[lists.length];
+        outer:
+        for (int i = 0; i < driver.size; i++) {
+            int docNo = driver.docs[i];
+            for (int j = 1; j < lists.length; j++) {
+                // 各表都升序，游标只前进
+                cursors[j] = lists[j].seek(cursors[j], docNo);
+                if (cursors[j] >= lists[j].size) break outer;
+                if (lists[j].docs[cursors[j]] != docNo) continue outer;
+            }
+            Doc d = docs.get(docNo);
+            if (!verify || d.contains(q)) result.add(d.transaction);
+        }
+        return result;
+    }
+
+    /**
+     * 关键字涉及的倒排表；任一词元不存在时返回 null（必然无结果）
+     */
+    private Posting[] queryPostings(String q) {
+        if (q.length() == 1) {
+            Posting p = postings.get(unigram(q.charAt(0)));
+            return p != null ? new Posting[] {p} : null;
+        }
+        int[] keys = new int[q.length() - 1];
+        for (int i = 0; i + 1 < q.length(); i++) {
+            keys[i] = bigram(q.charAt(i), q.charAt(i + 1));
+        }
+        Arrays.sort(keys);
+        List<Posting> lists = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0 && keys[i] == keys[i - 1]) continue;
+            Posting p = postings.get(keys[i]);
+            if (p == null) return null;
+            lists.add(p);
+        }
+        return lists.toArray(new Posting[0]);
+    }
+
+    /**
+     * 重新编号：去掉已删除文档的空位并重建倒排表
+     */
+    private void renumber() {
+        List<Doc> alive = new ArrayList<>(idToDoc.size());
+        for (Doc d : docs) {
+            if (d != null) alive.add(d);
+        }
+        clear();
+        for (Doc d : alive) {
+            put(d.transaction);
+        }
+    }
+
+    private interface TokenSink {
+        void accept(int key);
+    }
+
+    private static void forEachToken(Doc doc, TokenSink sink) {
+        tokens(doc.description, sink);
+        tokens(doc.tags, sink);
+    }
+
+    private static void tokens(String text, TokenSink sink) {
+        if (text == null) return;
+        for (int i = 0; i < text.length(); i++) {
+            sink.accept(unigram(text.charAt(i)));
+            if (i + 1 < text.length()) {
+                sink.accept(bigram(text.charAt(i), text.charAt(i + 1)));
+            }
+        }
+    }
+
+    // 单字与二字词元共用 int 键空间；U+FFFF 不会出现在正常文本中，偶发冲突也只会多出候选，由子串确认排除
+    private static int unigram(char c) {
+        return (c << 16) | 0xFFFF;
+    }
+
+    private static int bigram(char a, char b) {
+        return (a << 16) | b;
+    }
+
+    /**
+     * 与 FilterRule.byKeyword 相同的归一化（转小写）
+     */
+    private static String normalize(String text) {
+        return text != null ? text.toLowerCase() : null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.accounting.model;
+
+import jakarta.persistence.*;
+
+@Entity
+// 按 (用户, 年月, 类型, 分类) 预先汇总的金额与条数，随账目增删改在同一事务内增量维护
+@Table(name = "monthly_rollup", indexes = @Index(name = "idx_monthly_rollup_user_month", columnList = "userId, yearMonth"))
+public class MonthlyRollup {
+    @Id
+    // 由四个维度拼成的确定性主键，增量更新时可直接按主键累加
+    private String id;
+
+    private String userId;
+
+    @Column(nullable = false, length = 7)
+    private String yearMonth; // yyyy-MM，字符串顺序即时间顺序
+
+    @Enumerated(EnumType.STRING)
+    private Transaction.TransactionType type;
+
+    private String categoryId;
+
+    @Column(nullable = false)
+    private long cents; // 金额合计（分）
+
+    @Column(nullable = false)
+    private long rowCount;
+
+    public MonthlyRollup() {}
+
+    public MonthlyRollup(String userId, String yearMonth, Transaction.TransactionType type, String categoryId) {
+        this.id = keyOf(userId, yearMonth, type, categoryId);
+        this.userId = userId;
+        this.yearMonth = yearMonth;
+        this.type = type;
+        this.categoryId = categoryId;
+    }
+
+    /**
+     * 主键：各维度带长度前缀拼接，null 记为 "-"，不同维度组合不会拼出相同的键
+     */
+    public static String keyOf(String userId, String yearMonth, Transaction.TransactionType type, String categoryId) {
+        return part(userId) + "|" + yearMonth + "|" + (type != null ? type.name() : "-") + "|" + part(categoryId);
+    }
+
+    private static String part(String value) {
+        return value == null ? "-" : value.length() + ":" + value;
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+    public String getYearMonth() { return yearMonth; }
+    public void setYearMonth(String yearMonth) { this.yearMonth = yearMonth; }
+    public Transaction.TransactionType getType() { return type; }
+    public void setType(Transaction.TransactionType type) { this.type = type; }
+    public String getCategoryId() { return categoryId; }
+    public void setCategoryId(String categoryId) { this.categoryId = categoryId; }
+    public long getCents() { return cents; }
+    public void setCents(long cents) { this.cents = cents; }
+    public long getRowCount() { return rowCount; }
+    public void setRowCount(long rowCount) { this.rowCount = rowCount; }
+}
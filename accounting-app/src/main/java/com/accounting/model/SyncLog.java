@@ -5,7 +5,8 @@ import java.time.LocalDateTime;
 
 @Entity
 // 使用v2表名并采用UUID主键，解决SQLite自增插入兼容问题
-@Table(name = "sync_log_v2")
+// 按用户取最大版本（同步和统计缓存每次请求都要查）走索引
+@Table(name = "sync_log_v2", indexes = @Index(name = "idx_sync_log_user_version", columnList = "userId, version"))
 public class SyncLog {
     @Id
     // 主键改为UUID字符串，避免数据库自增冲突
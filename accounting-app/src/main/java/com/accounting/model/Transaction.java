@@ -1,12 +1,18 @@
 package com.accounting.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.gson.annotations.SerializedName;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.UUID;
 
 /**
@@ -14,7 +20,11 @@ import java.util.UUID;
  * 支持支出/收入两种类型
  */
 @Entity
-@Table(name = "transactions")
+// (date, id) 索引支撑列表的键集分页：按索引倒序扫描，取够一页即停止；(userId, yearMonth) 索引支撑按月分组统计
+@Table(name = "transactions", indexes = {
+    @Index(name = "idx_transactions_date_id", columnList = "date, id"),
+    @Index(name = "idx_transactions_user_month", columnList = "userId, yearMonth")
+})
 public class Transaction {
     @Id
     @SerializedName("id")
@@ -39,6 +49,10 @@ public class Transaction {
     @SerializedName("date")
     private LocalDateTime date;
     
+    // 由 date 派生的 yyyy-MM，按月分组统计都按这一列，不在数据库里按时区换算毫秒数
+    @Column(name = "year_month", length = 7)
+    private String yearMonth;
+    
     @SerializedName("createdAt")
     private LocalDateTime createdAt;
     
@@ -62,7 +76,22 @@ public class Transaction {
         this.amount = amount;
         this.categoryId = categoryId;
         this.description = description;
-        this.date = LocalDateTime.now();
+        setDate(LocalDateTime.now());
+    }
+    
+    /**
+     * 按月统计使用的月份键 yyyy-MM，只取 LocalDateTime 本身的年月，与时区无关；无日期时为 null
+     * 服务端的 year_month 列、月度汇总增量和重建都经由这里取月份
+     */
+    public static String monthKeyOf(LocalDateTime date) {
+        return date != null ? YearMonth.from(date).toString() : null;
+    }
+    
+    // Gson 等按字段反序列化时不经过 setDate，写库前再派生一次
+    @PrePersist
+    @PreUpdate
+    void deriveYearMonth() {
+        this.yearMonth = monthKeyOf(date);
     }
     
     public String getId() {
@@ -119,6 +148,12 @@ public class Transaction {
     
     public void setDate(LocalDateTime date) {
         this.date = date;
+        this.yearMonth = monthKeyOf(date);
+    }
+    
+    @JsonIgnore
+    public String getYearMonth() {
+        return yearMonth;
     }
     
     public LocalDateTime getCreatedAt() {
@@ -0,0 +1,23 @@
+package com.accounting.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 账目摘要投影
+ * 列表和图表只需要这几个字段：查询时直接构造，不加载完整实体，也不进入持久化上下文
+ */
+public record TransactionSummary(
+        String id,
+        LocalDateTime date,
+        double amount,
+        Transaction.TransactionType type,
+        String categoryId) {
+
+    // fields= 参数可选的字段名，与 Transaction 的 JSON 字段名一致
+    public static final List<String> FIELDS = List.of("id", "date", "amount", "type", "categoryId");
+
+    public static TransactionSummary of(Transaction t) {
+        return new TransactionSummary(t.getId(), t.getDate(), t.getAmount(), t.getType(), t.getCategoryId());
+    }
+}
@@ -0,0 +1,34 @@
+package com.accounting.repository;
+
+import com.accounting.model.MonthlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, String> {
+
+    // 包含公共记录（userId为null）的汇总行，与 TransactionRepository.findVisibleForUser 的可见范围一致
+    // 年月为 yyyy-MM 字符串，按字符串比较即按时间比较；区间两端都包含
+    @Query("""
+        SELECT r FROM MonthlyRollup r
+        WHERE (r.userId IS NULL OR r.userId = :userId) AND r.yearMonth >= :from AND r.yearMonth <= :to
+        """)
+    List<MonthlyRollup> findVisible(@Param("userId") String userId, @Param("from") String from, @Param("to") String to);
+
+    List<MonthlyRollup> findByUserId(String userId);
+
+    // 原子累加，返回 0 表示该行还不存在
+    @Modifying
+    @Query("UPDATE MonthlyRollup r SET r.cents = r.cents + :cents, r.rowCount = r.rowCount + :rowCount WHERE r.id = :id")
+    int increment(@Param("id") String id, @Param("cents") long cents, @Param("rowCount") long rowCount);
+
+    // 条数减到 0 的行不再需要
+    @Modifying
+    @Query("DELETE FROM MonthlyRollup r WHERE r.id = :id AND r.rowCount <= 0")
+    int deleteIfEmpty(@Param("id") String id);
+}
@@ -1,12 +1,16 @@
 package com.accounting.repository;
 
 import com.accounting.model.SyncLog;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface SyncLogRepository extends JpaRepository<SyncLog, String> {
@@ -14,6 +18,14 @@ public interface SyncLogRepository extends JpaRepository<SyncLog, String> {
     @Query("SELECT s FROM SyncLog s WHERE s.userId = :userId AND s.version > :lastVersion ORDER BY s.version ASC")
     List<SyncLog> findChanges(@Param("userId") String userId, @Param("lastVersion") Long lastVersion);
 
+    // 流式版本，须在只读事务内消费并关闭
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM SyncLog s WHERE s.userId = :userId AND s.version > :lastVersion ORDER BY s.version ASC")
+    Stream<SyncLog> streamChanges(@Param("userId") String userId, @Param("lastVersion") Long lastVersion);
+
     @Query("SELECT COALESCE(MAX(s.version), 0) FROM SyncLog s WHERE s.userId = :userId")
     Long getMaxVersion(@Param("userId") String userId);
 }
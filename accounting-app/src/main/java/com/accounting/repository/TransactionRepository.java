@@ -1,17 +1,24 @@
 package com.accounting.repository;
 
 import com.accounting.model.Transaction;
+import com.accounting.model.TransactionSummary;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, String> {
+public interface TransactionRepository extends JpaRepository<Transaction, String>, JpaSpecificationExecutor<Transaction> {
     List<Transaction> findByUserId(String userId);
     List<Transaction> findByCategoryId(String categoryId);
     
@@ -23,6 +30,129 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
     @Query("SELECT t FROM Transaction t WHERE t.userId IS NULL OR t.userId = :userId")
     List<Transaction> findVisibleForUser(@Param("userId") String userId);
     
+    // 流式读取用户可见的记录，须在只读事务内消费并关闭；只读提示让 Hibernate 不为每行保存脏检查快照
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t FROM Transaction t WHERE t.userId IS NULL OR t.userId = :userId")
+    Stream<Transaction> streamVisibleForUser(@Param("userId") String userId);
+    
+    // 摘要投影：只读取列表/图表需要的列，直接构造 TransactionSummary，不生成托管实体
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.accounting.model.TransactionSummary(t.id, t.date, t.amount, t.type, t.categoryId) "
+         + "FROM Transaction t WHERE t.userId IS NULL OR t.userId = :userId")
+    Stream<TransactionSummary> streamSummariesForUser(@Param("userId") String userId);
+    
+    // 键集分页：按 (date, id) 倒序，有日期的记录在前，无日期的记录在后按 id 倒序
+    // Pageable 只用来限制条数（传 PageRequest.of(0, n)），返回 List 不会触发 count 查询
+    @Query("SELECT t FROM Transaction t WHERE (t.userId IS NULL OR t.userId = :userId) AND t.date IS NOT NULL ORDER BY t.date DESC, t.id DESC")
+    List<Transaction> findVisibleDatedFirst(@Param("userId") String userId, Pageable pageable);
+    
+    @Query("""
+        SELECT t FROM Transaction t
+        WHERE (t.userId IS NULL OR t.userId = :userId) AND t.date IS NOT NULL
+          AND (t.date < :date OR (t.date = :date AND t.id < :id))
+        ORDER BY t.date DESC, t.id DESC
+        """)
+    List<Transaction> findVisibleDatedAfter(@Param("userId") String userId, @Param("date") LocalDateTime date,
+                                            @Param("id") String id, Pageable pageable);
+    
+    @Query("SELECT t FROM Transaction t WHERE (t.userId IS NULL OR t.userId = :userId) AND t.date IS NULL ORDER BY t.id DESC")
+    List<Transaction> findVisibleUndatedFirst(@Param("userId") String userId, Pageable pageable);
+    
+    @Query("SELECT t FROM Transaction t WHERE (t.userId IS NULL OR t.userId = :userId) AND t.date IS NULL AND t.id < :id ORDER BY t.id DESC")
+    List<Transaction> findVisibleUndatedAfter(@Param("userId") String userId, @Param("id") String id, Pageable pageable);
+    
+    /**
+     * 按时间段、类型汇总的投影行：period 为 yyyy-MM 或 yyyy，cents 为金额合计（分）
+     */
+    interface PeriodTotal {
+        String getPeriod();
+        String getType();
+        Long getCents();
+        Long getRowCount();
+    }
+    
+    /**
+     * 按分类汇总的投影行，categoryId 可能为 null
+     */
+    interface CategoryTotal {
+        String getCategoryId();
+        Long getCents();
+    }
+    
+    // 统计用的分组汇总直接在数据库中完成，只返回每组一行
+    // 按写入时由 Transaction.monthKeyOf 派生的 year_month 列分组，与月度汇总增量用的是同一个月份；
+    // 不用 SQLite 的 'localtime' 换算，它取的是进程的操作系统时区，可能与 JVM 的 user.timezone 不同。
+    // from/to 为 yyyy-MM，两端都包含，按字符串比较即按时间比较，可走 (user_id, year_month) 索引
+    // 金额逐行四舍五入到分再求和，与本地统计的按分累加一致
+    @Query(value = """
+        SELECT t.year_month AS period, t.type AS type,
+               SUM(CAST(ROUND(t.amount * 100) AS INTEGER)) AS cents, COUNT(*) AS rowCount
+        FROM transactions t
+        WHERE (t.user_id IS NULL OR t.user_id = :userId) AND t.year_month >= :from AND t.year_month <= :to
+        GROUP BY period, t.type
+        """, nativeQuery = true)
+    List<PeriodTotal> sumByMonthAndType(@Param("userId") String userId, @Param("from") String from, @Param("to") String to);
+    
+    @Query(value = """
+        SELECT substr(t.year_month, 1, 4) AS period, t.type AS type,
+               SUM(CAST(ROUND(t.amount * 100) AS INTEGER)) AS cents, COUNT(*) AS rowCount
+        FROM transactions t
+        WHERE (t.user_id IS NULL OR t.user_id = :userId) AND t.year_month >= :from AND t.year_month <= :to
+        GROUP BY period, t.type
+        """, nativeQuery = true)
+    List<PeriodTotal> sumByYearAndType(@Param("userId") String userId, @Param("from") String from, @Param("to") String to);
+    
+    @Query(value = """
+        SELECT t.category_id AS categoryId, SUM(CAST(ROUND(t.amount * 100) AS INTEGER)) AS cents
+        FROM transactions t
+        WHERE (t.user_id IS NULL OR t.user_id = :userId) AND t.type = :type AND t.year_month >= :from AND t.year_month <= :to
+        GROUP BY t.category_id
+        """, nativeQuery = true)
+    List<CategoryTotal> sumByCategory(@Param("userId") String userId, @Param("type") String type,
+                                      @Param("from") String from, @Param("to") String to);
+    
+    /**
+     * 按 (用户, 年月, 类型, 分类) 汇总的投影行，用于重建 monthly_rollup
+     */
+    interface RollupTotal {
+        String getUserId();
+        String getYearMonth();
+        String getType();
+        String getCategoryId();
+        Long getCents();
+        Long getRowCount();
+    }
+    
+    // 无日期的记录 year_month 为 null，不计入按月汇总
+    @Query(value = """
+        SELECT t.user_id AS userId, t.year_month AS yearMonth,
+               t.type AS type, t.category_id AS categoryId,
+               SUM(CAST(ROUND(t.amount * 100) AS INTEGER)) AS cents, COUNT(*) AS rowCount
+        FROM transactions t
+        WHERE t.year_month IS NOT NULL
+        GROUP BY t.user_id, yearMonth, t.type, t.category_id
+        """, nativeQuery = true)
+    List<RollupTotal> sumForRollup();
+    
+    @Query(value = """
+        SELECT t.user_id AS userId, t.year_month AS yearMonth,
+               t.type AS type, t.category_id AS categoryId,
+               SUM(CAST(ROUND(t.amount * 100) AS INTEGER)) AS cents, COUNT(*) AS rowCount
+        FROM transactions t
+        WHERE t.year_month IS NOT NULL AND t.user_id = :userId
+        GROUP BY t.user_id, yearMonth, t.type, t.category_id
+        """, nativeQuery = true)
+    List<RollupTotal> sumForRollup(@Param("userId") String userId);
+    
+    // 新增 year_month 列之前写入的记录，启动时分批补齐
+    List<Transaction> findTop500ByYearMonthIsNullAndDateIsNotNull();
+    
+    @Query("SELECT COUNT(t) FROM Transaction t WHERE t.userId IS NULL OR t.userId = :userId")
+    long countVisibleForUser(@Param("userId") String userId);
+    
     // 原子更新：仅当传入updatedAt比数据库中的更新时才更新
     @Modifying
     @Query("""
@@ -32,6 +162,7 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
             t.categoryId = :categoryId,
             t.description = :description,
             t.date = :date,
+            t.yearMonth = :yearMonth,
             t.updatedAt = :updatedAt,
             t.tags = :tags,
             t.userId = :userId
@@ -45,6 +176,7 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
             @Param("categoryId") String categoryId,
             @Param("description") String description,
             @Param("date") LocalDateTime date,
+            @Param("yearMonth") String yearMonth,
             @Param("updatedAt") LocalDateTime updatedAt,
             @Param("tags") String tags
     );
@@ -0,0 +1,114 @@
+package com.accounting.repository;
+
+import com.accounting.filter.FilterRule;
+import com.accounting.model.Transaction;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * 把 FilterRule 编译为 JPA Specification，过滤在数据库中完成
+ * 叶子条件对 NULL 列显式返回 false，保证 NOT 组合后与内存谓词语义一致
+ */
+public final class TransactionSpecifications {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private TransactionSpecifications() {
+    }
+
+    /**
+     * 用户可见的记录：本人记录和历史公共记录（userId 为 null）
+     */
+    public static Specification<Transaction> visibleTo(String userId) {
+        return (root, query, cb) -> userId == null
+            ? cb.isNull(root.get("userId"))
+            : cb.or(cb.isNull(root.get("userId")), cb.equal(root.get("userId"), userId));
+    }
+
+    /**
+     * 键集分页：按 (date, id) 倒序排在游标之后的有日期记录；date 为 null 表示从第一条开始
+     */
+    public static Specification<Transaction> datedAfter(LocalDateTime date, String id) {
+        return (root, query, cb) -> {
+            Expression<LocalDateTime> column = root.get("date");
+            if (date == null) {
+                return column.isNotNull();
+            }
+            Expression<String> idColumn = root.get("id");
+            return cb.and(column.isNotNull(), cb.or(cb.lessThan(column, date),
+                cb.and(cb.equal(column, date), cb.lessThan(idColumn, id))));
+        };
+    }
+
+    /**
+     * 键集分页：无日期的记录按 id 倒序排在游标之后的部分；id 为 null 表示从第一条开始
+     */
+    public static Specification<Transaction> undatedAfter(String id) {
+        return (root, query, cb) -> {
+            Predicate undated = root.get("date").isNull();
+            return id == null ? undated : cb.and(undated, cb.lessThan(root.<String>get("id"), id));
+        };
+    }
+
+    public static Specification<Transaction> fromRule(FilterRule rule) {
+        return (root, query, cb) -> toPredicate(rule, root, cb);
+    }
+
+    private static Predicate toPredicate(FilterRule rule, Root<Transaction> root, CriteriaBuilder cb) {
+        switch (rule.getKind()) {
+            case ALL:
+                return cb.conjunction();
+            case DATE_RANGE: {
+                Expression<LocalDateTime> date = root.get("date");
+                return cb.and(date.isNotNull(), cb.between(date, rule.getStartDate(), rule.getEndDate()));
+            }
+            case CATEGORY: {
+                Expression<String> category = root.get("categoryId");
+                return cb.and(category.isNotNull(), cb.equal(category, rule.getCategoryId()));
+            }
+            case TYPE: {
+                Expression<Transaction.TransactionType> type = root.get("type");
+                return cb.and(type.isNotNull(), cb.equal(type, rule.getType()));
+            }
+            case AMOUNT_RANGE: {
+                Expression<Double> amount = root.get("amount");
+                Predicate p = cb.conjunction();
+                // 控制器用正负无穷表示不设上/下限
+                if (!Double.isInfinite(rule.getMinAmount())) {
+                    p = cb.and(p, cb.ge(amount, rule.getMinAmount()));
+                }
+                if (!Double.isInfinite(rule.getMaxAmount())) {
+                    p = cb.and(p, cb.le(amount, rule.getMaxAmount()));
+                }
+                return p;
+            }
+            case KEYWORD: {
+                String pattern = "%" + escapeLike(rule.getKeyword()) + "%";
+                return cb.or(contains(root.get("description"), pattern, cb),
+                    contains(root.get("tags"), pattern, cb));
+            }
+            case AND:
+                return cb.and(toPredicate(rule.getChildren().get(0), root, cb),
+                    toPredicate(rule.getChildren().get(1), root, cb));
+            case OR:
+                return cb.or(toPredicate(rule.getChildren().get(0), root, cb),
+                    toPredicate(rule.getChildren().get(1), root, cb));
+            case NOT:
+                return cb.not(toPredicate(rule.getChildren().get(0), root, cb));
+            default:
+                throw new IllegalArgumentException("不支持的筛选规则: " + rule.getKind());
+        }
+    }
+
+    private static Predicate contains(Expression<String> column, String pattern, CriteriaBuilder cb) {
+        return cb.and(column.isNotNull(), cb.like(cb.lower(column), pattern, LIKE_ESCAPE));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,27 @@
+package com.accounting.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 在当前事务提交后执行的操作（缓存作废用）
+ * 提交前作废的话，并发读取仍按提交前的数据重算并填回缓存；回滚时不执行。
+ * 没有进行中的事务时立即执行。
+ */
+final class AfterCommit {
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
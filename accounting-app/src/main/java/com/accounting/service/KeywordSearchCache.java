@@ -0,0 +1,153 @@
+package com.accounting.service;
+
+import com.accounting.filter.FilterRule;
+import com.accounting.filter.FilterStatistics;
+import com.accounting.filter.KeywordIndex;
+import com.accounting.model.SyncLog;
+import com.accounting.model.Transaction;
+import com.accounting.repository.SyncLogRepository;
+import com.accounting.repository.TransactionRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 按用户缓存的关键字索引
+ * 每个用户一份 KeywordIndex，包含其可见的全部记录，按最近使用淘汰。
+ * 查询前按同步日志追平：只重读缓存版本之后变更过的记录并增量更新索引，不必重建。
+ * 无归属的历史公共记录、批量导入和归属变更不一定写同步日志，由 TransactionService 显式作废。
+ * 作废在写入事务提交后执行：之后新建的条目只会读到已提交的数据，作废前取得的条目已不在缓存中。
+ * 同时缓存该用户数据的过滤统计（FilterStatistics），用于在命中记录上按选择性排序其余条件。
+ */
+@Service
+public class KeywordSearchCache {
+    // 最多缓存的用户数
+    private static final int MAX_USERS = 64;
+
+    private final TransactionRepository transactionRepository;
+    private final SyncLogRepository syncLogRepository;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+
+    private static final class Entry {
+        final KeywordIndex index = new KeywordIndex();
+        // 已应用的最大同步日志版本；-1 表示尚未加载
+        long version = -1;
+        // 用户全部可见记录的统计，数据变化后置空，用到时重算
+        FilterStatistics statistics;
+    }
+
+    public KeywordSearchCache(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository) {
+        this.transactionRepository = transactionRepository;
+        this.syncLogRepository = syncLogRepository;
+    }
+
+    /**
+     * 在用户可见的记录中按关键字查询，语义同 FilterRule.byKeyword
+     */
+    @Transactional(readOnly = true)
+    public List<Transaction> search(String userId, String keyword) {
+        Entry entry = entry(userId);
+        synchronized (entry) {
+            sync(userId, entry);
+            return entry.index.search(keyword);
+        }
+    }
+
+    /**
+     * 关键字命中的记录中再按完整规则过滤
+     * 规则先按该用户数据的统计重新估计各条件的选择性，便宜且过滤掉更多行的条件先检查
+     */
+    @Transactional(readOnly = true)
+    public List<Transaction> search(String userId, String keyword, FilterRule rule) {
+        Entry entry = entry(userId);
+        FilterRule ordered;
+        List<Transaction> hits;
+        synchronized (entry) {
+            sync(userId, entry);
+            if (entry.statistics == null) {
+                entry.statistics = FilterStatistics.of(entry.index.search(null));
+            }
+            ordered = rule.withStatistics(entry.statistics);
+            hits = entry.index.search(keyword);
+        }
+        return hits.stream().filter(ordered::test).collect(Collectors.toList());
+    }
+
+    private Entry entry(String userId) {
+        synchronized (entries) {
+            return entries.computeIfAbsent(userId, k -> new Entry());
+        }
+    }
+
+    private void sync(String userId, Entry entry) {
+        if (entry.version < 0) {
+            load(userId, entry);
+        } else {
+            catchUp(userId, entry);
+        }
+    }
+
+    /**
+     * 作废某个用户的缓存，当前事务提交后生效
+     */
+    public void invalidate(String userId) {
+        if (userId == null) {
+            invalidateAll();
+            return;
+        }
+        AfterCommit.run(() -> {
+            synchronized (entries) {
+                entries.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * 作废全部缓存（公共记录对所有用户可见），当前事务提交后生效
+     */
+    public void invalidateAll() {
+        AfterCommit.run(() -> {
+            synchronized (entries) {
+                entries.clear();
+            }
+        });
+    }
+
+    private void load(String userId, Entry entry) {
+        // 先取版本再读数据：期间的修改会在下次追平时重放，重放是幂等的
+        long version = syncLogRepository.getMaxVersion(userId);
+        for (Transaction t : transactionRepository.findVisibleForUser(userId)) {
+            entry.index.put(t);
+        }
+        entry.version = version;
+    }
+
+    private void catchUp(String userId, Entry entry) {
+        List<SyncLog> changes = syncLogRepository.findChanges(userId, entry.version);
+        if (!changes.isEmpty()) {
+            entry.statistics = null;
+        }
+        for (SyncLog change : changes) {
+            if (change.getAction() == SyncLog.Action.DELETE) {
+                entry.index.remove(change.getEntityId());
+            } else {
+                Transaction current = transactionRepository.findById(change.getEntityId()).orElse(null);
+                if (current != null && (current.getUserId() == null || current.getUserId().equals(userId))) {
+                    entry.index.put(current);
+                } else {
+                    entry.index.remove(change.getEntityId());
+                }
+            }
+            entry.version = Math.max(entry.version, change.getVersion());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.accounting.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时检查月度汇总表
+ * 先为旧记录补齐 year_month 列；补齐了记录（此前的汇总行按数据库时区分月，可能有偏差）、
+ * 首次部署（汇总表为空而账目不为空）或配置了 accounting.rollup.rebuild-on-startup=true 时全量重建；
+ * 重建失败时汇总表保持未就绪，统计继续按账目表分组查询。
+ */
+@Component
+public class MonthlyRollupInitializer {
+    private final MonthlyRollupService monthlyRollupService;
+    private final boolean rebuildOnStartup;
+
+    public MonthlyRollupInitializer(MonthlyRollupService monthlyRollupService,
+                                    @Value("${accounting.rollup.rebuild-on-startup:false}") boolean rebuildOnStartup) {
+        this.monthlyRollupService = monthlyRollupService;
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try {
+            int backfilled = monthlyRollupService.backfillYearMonths();
+            if (rebuildOnStartup || backfilled > 0 || monthlyRollupService.needsInitialBuild()) {
+                monthlyRollupService.rebuild(null);
+            }
+            monthlyRollupService.markReady();
+        } catch (Exception e) {
+            System.err.println("月度汇总初始化失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.accounting.service;
+
+import com.accounting.model.MonthlyRollup;
+import com.accounting.model.Transaction;
+import com.accounting.repository.MonthlyRollupRepository;
+import com.accounting.repository.TransactionRepository;
+import com.accounting.storage.ColumnarSegment;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 月度汇总表（monthly_rollup）维护服务
+ * <p>
+ * 账目增删改时把变化量累加到对应的 (用户, 年月, 类型, 分类) 汇总行，与账目写入在同一事务中提交；
+ * 统计直接读取汇总行，读取量只与月份数和分类数有关，与账目条数无关。
+ * rebuild 按账目表重新分组汇总，修复手工改库等造成的偏差。
+ * </p>
+ */
+@Service
+@Transactional
+public class MonthlyRollupService {
+    private final MonthlyRollupRepository rollupRepository;
+    private final TransactionRepository transactionRepository;
+    private final StatisticCache statisticCache;
+    @PersistenceContext
+    private EntityManager entityManager;
+    // 首次部署时汇总表为空，初始汇总完成前统计应退回按账目表分组查询
+    private volatile boolean ready;
+
+    public MonthlyRollupService(MonthlyRollupRepository rollupRepository, TransactionRepository transactionRepository,
+                                StatisticCache statisticCache) {
+        this.rollupRepository = rollupRepository;
+        this.transactionRepository = transactionRepository;
+        this.statisticCache = statisticCache;
+    }
+
+    /**
+     * 一批修改对汇总行的变化量
+     * 按汇总行合并，apply 时每行只执行一次累加。金额和条数在调用时就取值，
+     * 更新记录前先 remove 旧状态，实体随后被合并覆盖也不影响。
+     */
+    public static final class Delta {
+        private final Map<String, MonthlyRollup> changes = new LinkedHashMap<>();
+
+        public Delta add(Transaction t) {
+            return change(t, 1);
+        }
+
+        public Delta remove(Transaction t) {
+            return change(t, -1);
+        }
+
+        public Delta addAll(Delta other) {
+            for (MonthlyRollup r : other.changes.values()) {
+                accumulate(r.getUserId(), r.getYearMonth(), r.getType(), r.getCategoryId(), r.getCents(), r.getRowCount());
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        // 月份与 year_month 列同取自 Transaction.monthKeyOf，增量与重建不会分到不同月份；无日期的记录不计入
+        private Delta change(Transaction t, int sign) {
+            String yearMonth = t != null ? Transaction.monthKeyOf(t.getDate()) : null;
+            if (yearMonth == null) {
+                return this;
+            }
+            return accumulate(t.getUserId(), yearMonth, t.getType(), t.getCategoryId(),
+                sign * ColumnarSegment.toCents(t.getAmount()), sign);
+        }
+
+        private Delta accumulate(String userId, String yearMonth, Transaction.TransactionType type, String categoryId,
+                                 long cents, long rowCount) {
+            MonthlyRollup r = changes.computeIfAbsent(MonthlyRollup.keyOf(userId, yearMonth, type, categoryId),
+                id -> new MonthlyRollup(userId, yearMonth, type, categoryId));
+            r.setCents(r.getCents() + cents);
+            r.setRowCount(r.getRowCount() + rowCount);
+            return this;
+        }
+    }
+
+    /**
+     * 把变化量累加到汇总表，须在写账目的同一事务中调用
+     */
+    public void apply(Delta delta) {
+        for (MonthlyRollup change : delta.changes.values()) {
+            if (change.getCents() == 0 && change.getRowCount() == 0) {
+                continue;
+            }
+            if (rollupRepository.increment(change.getId(), change.getCents(), change.getRowCount()) == 0) {
+                MonthlyRollup row = new MonthlyRollup(change.getUserId(), change.getYearMonth(), change.getType(),
+                    change.getCategoryId());
+                row.setCents(change.getCents());
+                row.setRowCount(change.getRowCount());
+                rollupRepository.save(row);
+            } else if (change.getRowCount() < 0) {
+                rollupRepository.deleteIfEmpty(change.getId());
+            }
+        }
+    }
+
+    /**
+     * 清空汇总表，与清空账目表同时进行
+     */
+    public void clear() {
+        rollupRepository.deleteAllInBatch();
+    }
+
+    /**
+     * 用户可见（含公共记录）的 [from, to] 内各月汇总行
+     */
+    @Transactional(readOnly = true)
+    public List<MonthlyRollup> findVisible(String userId, YearMonth from, YearMonth to) {
+        return rollupRepository.findVisible(userId, from.toString(), to.toString());
+    }
+
+    /**
+     * 汇总表是否已与账目表一致，可供统计读取
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    void markReady() {
+        ready = true;
+    }
+
+    /**
+     * 首次部署：账目表有数据而汇总表还是空的
+     */
+    @Transactional(readOnly = true)
+    public boolean needsInitialBuild() {
+        return rollupRepository.count() == 0 && transactionRepository.count() > 0;
+    }
+
+    /**
+     * 为新增 year_month 列之前写入的记录补齐月份，每批写入后清空持久化上下文
+     * @return 补齐的记录数
+     */
+    public int backfillYearMonths() {
+        int filled = 0;
+        List<Transaction> batch;
+        while (!(batch = transactionRepository.findTop500ByYearMonthIsNullAndDateIsNotNull()).isEmpty()) {
+            for (Transaction t : batch) {
+                // setDate 会重新派生 year_month
+                t.setDate(t.getDate());
+            }
+            transactionRepository.saveAll(batch);
+            entityManager.flush();
+            entityManager.clear();
+            filled += batch.size();
+        }
+        return filled;
+    }
+
+    /**
+     * 按账目表重新汇总并与现有汇总行逐行比较，只写入有差异的行
+     * @param userId 只重建该用户的汇总行；为 null 时重建全部（含公共记录）
+     * @return 修正的汇总行数
+     */
+    public int rebuild(String userId) {
+        Map<String, MonthlyRollup> current = new HashMap<>();
+        for (MonthlyRollup r : userId == null ? rollupRepository.findAll() : rollupRepository.findByUserId(userId)) {
+            current.put(r.getId(), r);
+        }
+        int repaired = 0;
+        List<TransactionRepository.RollupTotal> totals = userId == null
+            ? transactionRepository.sumForRollup() : transactionRepository.sumForRollup(userId);
+        for (TransactionRepository.RollupTotal total : totals) {
+            Transaction.TransactionType type = total.getType() != null
+                ? Transaction.TransactionType.valueOf(total.getType()) : null;
+            long cents = total.getCents() != null ? total.getCents() : 0;
+            MonthlyRollup row = current.remove(
+                MonthlyRollup.keyOf(total.getUserId(), total.getYearMonth(), type, total.getCategoryId()));
+            if (row == null) {
+                row = new MonthlyRollup(total.getUserId(), total.getYearMonth(), type, total.getCategoryId());
+            } else if (row.getCents() == cents && row.getRowCount() == total.getRowCount()) {
+                continue;
+            }
+            row.setCents(cents);
+            row.setRowCount(total.getRowCount());
+            rollupRepository.save(row);
+            repaired++;
+        }
+        // 剩下的汇总行已没有对应的账目
+        rollupRepository.deleteAll(current.values());
+        repaired += current.size();
+        if (repaired > 0) {
+            // 修正不写同步日志，按旧汇总算出的统计结果要显式作废
+            statisticCache.invalidate(userId);
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,129 @@
+package com.accounting.service;
+
+import com.accounting.repository.SyncLogRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 统计结果缓存
+ * 按 (用户, 方法及参数) 缓存 StatisticService 的结果，每个结果记下计算时该用户的最大同步日志版本。
+ * 读取时先取当前版本，版本变了说明数据有修改，结果作废重算，不需要写入方主动通知。
+ * 无归属的公共记录、批量导入和归属变更不一定写同步日志，由写入方显式作废（同 KeywordSearchCache）。
+ * 作废在写入事务提交后生效，并使作废前已开始的计算结果不再写入缓存。
+ * 条目总数有上限，按最近使用淘汰。缓存的结果是共享实例，调用方不得修改。
+ */
+@Service
+public class StatisticCache {
+    // 最多缓存的结果数
+    private static final int MAX_ENTRIES = 1024;
+
+    private final SyncLogRepository syncLogRepository;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // 全部作废时递增，作废前开始计算的结果不再写入缓存
+    private final AtomicLong generation = new AtomicLong();
+    // 按用户作废时递增，同上，只影响该用户；读写都在 entries 锁内
+    private final Map<String, Long> userGenerations = new HashMap<>();
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private record Key(String userId, String name) {}
+
+    private record Entry(long version, long generation, Object value) {}
+
+    public StatisticCache(SyncLogRepository syncLogRepository) {
+        this.syncLogRepository = syncLogRepository;
+    }
+
+    /**
+     * 取缓存的结果，没有或已过期时调用 compute 计算并缓存
+     * @param name 方法名及参数，同一用户下唯一确定一个结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String userId, String name, Supplier<T> compute) {
+        // 先取版本再计算：计算期间的修改会让下次读取时版本不一致而重算
+        long gen = generation.get();
+        long userGen;
+        synchronized (entries) {
+            userGen = userGenerations.getOrDefault(userId, 0L);
+        }
+        long version = syncLogRepository.getMaxVersion(userId);
+        Key key = new Key(userId, name);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version() == version && entry.generation() == gen) {
+                hits.incrementAndGet();
+                return (T) entry.value();
+            }
+        }
+        misses.incrementAndGet();
+        T value = compute.get();
+        synchronized (entries) {
+            if (generation.get() == gen && userGenerations.getOrDefault(userId, 0L) == userGen) {
+                entries.put(key, new Entry(version, gen, value));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 作废某个用户的缓存，当前事务提交后生效
+     */
+    public void invalidate(String userId) {
+        if (userId == null) {
+            invalidateAll();
+            return;
+        }
+        AfterCommit.run(() -> {
+            synchronized (entries) {
+                userGenerations.merge(userId, 1L, Long::sum);
+                entries.keySet().removeIf(k -> Objects.equals(k.userId(), userId));
+            }
+        });
+    }
+
+    /**
+     * 作废全部缓存（公共记录对所有用户可见），当前事务提交后生效
+     */
+    public void invalidateAll() {
+        AfterCommit.run(() -> {
+            synchronized (entries) {
+                generation.incrementAndGet();
+                entries.clear();
+            }
+        });
+    }
+
+    /**
+     * 命中、未命中、淘汰次数和当前条目数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.get();
+        long m = misses.get();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxSize", MAX_ENTRIES);
+        return stats;
+    }
+}
@@ -1,10 +1,14 @@
 package com.accounting.service;
 
+import com.accounting.model.MonthlyRollup;
 import com.accounting.model.Transaction;
-import java.time.LocalDate;
+import com.accounting.repository.TransactionRepository;
+import com.accounting.stats.MonthlyAggregates;
 import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -15,105 +19,103 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * 统计服务类
  * 提供消费趋势预测和数据分析功能
+ * 优先读取增量维护的月度汇总表（MonthlyRollupService），读取量只与月份数和分类数有关；
+ * 汇总表初始构建完成前，退回在数据库中按月份/年份/分类分组（TransactionRepository 的 sumBy* 查询）。
+ * 两种来源都不加载账目实体，按月结果填入 MonthlyAggregates，与本地统计共用。
+ * 查询数据库的结果经 StatisticCache 按用户同步版本缓存，数据未变时直接返回，返回值不得修改
  */
 @Service
 @Transactional(readOnly = true)
 public class StatisticService {
-    private final TransactionService transactionService;
+    private final TransactionRepository transactionRepository;
+    private final MonthlyRollupService monthlyRollupService;
+    private final StatisticCache statisticCache;
     
-    public StatisticService(TransactionService transactionService) {
-        this.transactionService = transactionService;
+    public StatisticService(TransactionRepository transactionRepository, MonthlyRollupService monthlyRollupService,
+                            StatisticCache statisticCache) {
+        this.transactionRepository = transactionRepository;
+        this.monthlyRollupService = monthlyRollupService;
+        this.statisticCache = statisticCache;
+    }
+    
+    /**
+     * 最近 months 个月（含本月）的收支汇总，收入、支出和条数序列由一次分组查询得到
+     */
+    public MonthlyAggregates getMonthlyAggregates(String userId, int months) {
+        MonthlyAggregates shape = MonthlyAggregates.lastMonths(months);
+        // 范围随当前月份移动，键中带上起始月份
+        return statisticCache.get(userId, "monthly:" + shape.month(0) + ":" + shape.months(),
+            () -> aggregate(userId, shape.month(0), shape.months()));
+    }
+    
+    // [first, first + months) 内各月的收支和条数；按月份、类型分组的结果行只有 months * 2 行左右
+    private MonthlyAggregates aggregate(String userId, YearMonth first, int months) {
+        MonthlyAggregates agg = new MonthlyAggregates(first, months);
+        if (agg.months() == 0) {
+            return agg;
+        }
+        if (monthlyRollupService.isReady()) {
+            for (MonthlyRollup row : monthlyRollupService.findVisible(userId, agg.month(0), agg.month(agg.months() - 1))) {
+                int i = agg.monthOf(YearMonth.parse(row.getYearMonth()));
+                if (i < 0) continue;
+                boolean income = row.getType() == Transaction.TransactionType.INCOME;
+                boolean expense = row.getType() == Transaction.TransactionType.EXPENSE;
+                agg.add(i, income ? row.getCents() : 0, expense ? row.getCents() : 0, (int) row.getRowCount());
+            }
+            return agg;
+        }
+        List<TransactionRepository.PeriodTotal> rows = transactionRepository.sumByMonthAndType(
+            userId, agg.month(0).toString(), agg.month(agg.months() - 1).toString());
+        for (TransactionRepository.PeriodTotal row : rows) {
+            int i = agg.monthOf(YearMonth.parse(row.getPeriod()));
+            if (i < 0) continue;
+            long cents = row.getCents() != null ? row.getCents() : 0;
+            boolean income = Transaction.TransactionType.INCOME.name().equals(row.getType());
+            boolean expense = Transaction.TransactionType.EXPENSE.name().equals(row.getType());
+            agg.add(i, income ? cents : 0, expense ? cents : 0, row.getRowCount().intValue());
+        }
+        return agg;
     }
     
     /**
      * 按月统计支出
      */
     public Map<YearMonth, Double> getMonthlyExpenses(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return getMonthlyAggregates(userId, months).expenses();
     }
     
     /**
      * 按月统计收入
      */
     public Map<YearMonth, Double> getMonthlyIncome(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return getMonthlyAggregates(userId, months).incomes();
     }
     
     /**
      * 按分类统计支出
      */
     public Map<String, Double> getExpensesByCategory(String userId, YearMonth yearMonth) {
+        return statisticCache.get(userId, "category:" + yearMonth,
+            () -> Collections.unmodifiableMap(expensesByCategory(userId, yearMonth)));
+    }
+    
+    private Map<String, Double> expensesByCategory(String userId, YearMonth yearMonth) {
         Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
+        if (monthlyRollupService.isReady()) {
+            for (MonthlyRollup row : monthlyRollupService.findVisible(userId, yearMonth, yearMonth)) {
+                if (row.getType() != Transaction.TransactionType.EXPENSE) continue;
+                String category = row.getCategoryId() != null ? row.getCategoryId() : "未分类";
+                categoryData.merge(category, row.getCents() / 100.0, Double::sum);
+            }
+            return categoryData;
+        }
+        List<TransactionRepository.CategoryTotal> rows = transactionRepository.sumByCategory(userId,
+            Transaction.TransactionType.EXPENSE.name(), yearMonth.toString(), yearMonth.toString());
+        for (TransactionRepository.CategoryTotal row : rows) {
+            String category = row.getCategoryId() != null ? row.getCategoryId() : "未分类";
+            long cents = row.getCents() != null ? row.getCents() : 0;
+            categoryData.merge(category, cents / 100.0, Double::sum);
         }
-        
         return categoryData;
     }
     
@@ -122,8 +124,10 @@ public class StatisticService {
      * 使用最小二乘法
      */
     public double predictNextMonthExpense(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = getMonthlyExpenses(userId, months);
-        
+        return predictNext(getMonthlyExpenses(userId, months));
+    }
+    
+    private static double predictNext(Map<YearMonth, Double> monthlyData) {
         if (monthlyData.size() < 2) {
             // 数据不足，返回平均值
             return monthlyData.values().stream()
@@ -164,7 +168,10 @@ public class StatisticService {
      * 计算平均月支出
      */
     public double getAverageMonthlyExpense(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = getMonthlyExpenses(userId, months);
+        return average(getMonthlyExpenses(userId, months));
+    }
+    
+    private static double average(Map<YearMonth, Double> monthlyData) {
         return monthlyData.values().stream()
             .mapToDouble(Double::doubleValue)
             .average()
@@ -175,8 +182,10 @@ public class StatisticService {
      * 计算支出趋势（增长/下降百分比）
      */
     public double getExpenseTrend(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = getMonthlyExpenses(userId, months);
-        
+        return trend(getMonthlyExpenses(userId, months));
+    }
+    
+    private static double trend(Map<YearMonth, Double> monthlyData) {
         if (monthlyData.size() < 2) {
             return 0;
         }
@@ -199,32 +208,39 @@ public class StatisticService {
      * 获取年度统计
      */
     public Map<String, Object> getYearlyStatistics(String userId, int year) {
+        return statisticCache.get(userId, "yearly:" + year,
+            () -> Collections.unmodifiableMap(yearlyStatistics(userId, year)));
+    }
+    
+    private Map<String, Object> yearlyStatistics(String userId, int year) {
         Map<String, Object> stats = new HashMap<>();
         
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        double totalIncome = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                return t.getDate().getYear() == year;
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpense = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                return t.getDate().getYear() == year;
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        long incomeCents = 0;
+        long expenseCents = 0;
+        if (monthlyRollupService.isReady()) {
+            MonthlyAggregates agg = aggregate(userId, YearMonth.of(year, 1), 12);
+            for (int i = 0; i < agg.months(); i++) {
+                incomeCents += agg.incomeCents(i);
+                expenseCents += agg.expenseCents(i);
+            }
+        } else {
+            for (TransactionRepository.PeriodTotal row : transactionRepository.sumByYearAndType(
+                    userId, YearMonth.of(year, 1).toString(), YearMonth.of(year, 12).toString())) {
+                long cents = row.getCents() != null ? row.getCents() : 0;
+                if (Transaction.TransactionType.INCOME.name().equals(row.getType())) {
+                    incomeCents += cents;
+                } else if (Transaction.TransactionType.EXPENSE.name().equals(row.getType())) {
+                    expenseCents += cents;
+                }
+            }
+        }
+        double totalIncome = incomeCents / 100.0;
+        double totalExpense = expenseCents / 100.0;
         
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", transactions.size());
+        stats.put("transactionCount", (int) transactionRepository.countVisibleForUser(userId));
         
         return stats;
     }
@@ -233,37 +249,58 @@ public class StatisticService {
      * 获取月度统计
      */
     public Map<String, Object> getMonthlyStatistics(String userId, int year, int month) {
+        return statisticCache.get(userId, "month:" + YearMonth.of(year, month),
+            () -> Collections.unmodifiableMap(monthlyStatistics(userId, year, month)));
+    }
+    
+    private Map<String, Object> monthlyStatistics(String userId, int year, int month) {
         Map<String, Object> stats = new HashMap<>();
         YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        List<Transaction> monthTransactions = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .collect(Collectors.toList());
-        
-        double totalIncome = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpense = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        MonthlyAggregates agg = aggregate(userId, yearMonth, 1);
+        double totalIncome = agg.totalIncome();
+        double totalExpense = agg.totalExpense();
         
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", monthTransactions.size());
+        stats.put("transactionCount", agg.totalCount());
         
         return stats;
     }
+    
+    /**
+     * 仪表盘与趋势页需要的全部数据
+     * 最近 months 个月的收支序列、趋势、平均、预测都由同一份月度汇总得到；
+     * 所选月份在范围内时月度统计也直接取自汇总，另外只查一次该月的分类支出
+     */
+    public Map<String, Object> getDashboard(String userId, int months, YearMonth yearMonth) {
+        MonthlyAggregates agg = getMonthlyAggregates(userId, months);
+        Map<YearMonth, Double> expenses = agg.expenses();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < agg.months(); i++) {
+            order.add(i);
+        }
+        
+        Map<String, Object> dashboard = new LinkedHashMap<>();
+        dashboard.put("months", order.stream().map(i -> agg.month(i).toString()).collect(Collectors.toList()));
+        dashboard.put("expenses", order.stream().map(agg::expense).collect(Collectors.toList()));
+        dashboard.put("income", order.stream().map(agg::income).collect(Collectors.toList()));
+        dashboard.put("trendPercent", trend(expenses));
+        dashboard.put("avgExpense", average(expenses));
+        dashboard.put("nextExpense", predictNext(expenses));
+        
+        int i = agg.monthOf(yearMonth);
+        if (i >= 0) {
+            Map<String, Object> month = new HashMap<>();
+            month.put("totalIncome", agg.income(i));
+            month.put("totalExpense", agg.expense(i));
+            month.put("netAmount", agg.income(i) - agg.expense(i));
+            month.put("transactionCount", agg.count(i));
+            dashboard.put("month", month);
+        } else {
+            dashboard.put("month", getMonthlyStatistics(userId, yearMonth.getYear(), yearMonth.getMonthValue()));
+        }
+        dashboard.put("category", getExpensesByCategory(userId, yearMonth));
+        return dashboard;
+    }
 }
-
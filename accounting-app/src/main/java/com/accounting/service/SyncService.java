@@ -8,6 +8,8 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,6 +18,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -31,11 +36,22 @@ import java.util.Map;
 public class SyncService {
     private final TransactionRepository transactionRepository;
     private final SyncLogRepository syncLogRepository;
+    private final KeywordSearchCache keywordSearchCache;
+    private final MonthlyRollupService monthlyRollupService;
+    private final StatisticCache statisticCache;
     private final Gson gson;
 
-    public SyncService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository) {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SyncService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository,
+                       KeywordSearchCache keywordSearchCache, MonthlyRollupService monthlyRollupService,
+                       StatisticCache statisticCache) {
         this.transactionRepository = transactionRepository;
         this.syncLogRepository = syncLogRepository;
+        this.keywordSearchCache = keywordSearchCache;
+        this.monthlyRollupService = monthlyRollupService;
+        this.statisticCache = statisticCache;
 
         JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
         JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
@@ -63,6 +79,28 @@ public class SyncService {
         return result;
     }
 
+    /**
+     * 流式拉取增量更新
+     * <p>
+     * 与 {@link #pull} 返回相同的变更，但逐条交给 sink 而不在内存中汇总，
+     * 适合首次同步等变更量很大的场景。
+     * </p>
+     * @return 客户端应保存的当前版本号：读到变更时取最后一条的版本，
+     *         否则取读取前的最大版本，读取期间新写入的变更不会被跳过
+     */
+    @Transactional(readOnly = true)
+    public Long streamPull(String userId, Long lastVersion, Consumer<? super SyncLog> sink) {
+        Long currentVersion = syncLogRepository.getMaxVersion(userId);
+        try (Stream<SyncLog> changes = syncLogRepository.streamChanges(userId, lastVersion)) {
+            for (SyncLog change : (Iterable<SyncLog>) changes::iterator) {
+                sink.accept(change);
+                entityManager.detach(change);
+                currentVersion = change.getVersion();
+            }
+        }
+        return currentVersion;
+    }
+
     /**
      * 推送并合并更改 (Push & Merge)
      * <p>
@@ -70,6 +108,7 @@ public class SyncService {
      * 采用 Last Write Wins (LWW) 策略解决冲突：
      * 如果服务器已存在该记录，则比较更新时间 (updatedAt)。
      * 仅当客户端数据的更新时间晚于服务器数据时，才执行覆盖操作。
+     * 合并成功的记录对月度汇总的变化量在整批处理完后一次写入，与合并在同一事务中。
      * </p>
      * @param userId 当前用户ID
      * @param incomingTransactions 客户端上传的交易列表
@@ -81,6 +120,7 @@ public class SyncService {
         Map<String, String> idMapping = new HashMap<>();
         
         Long currentMaxVersion = syncLogRepository.getMaxVersion(userId);
+        MonthlyRollupService.Delta rollup = new MonthlyRollupService.Delta();
         
         for (Transaction incoming : incomingTransactions) {
             try {
@@ -91,7 +131,7 @@ public class SyncService {
                     incoming.setId(newId);
                     // 无法映射空ID键，客户端应始终提供临时ID；此处仅记录生成的ID
                 }
-                processIncomingTransaction(userId, incoming, currentMaxVersion);
+                processIncomingTransaction(userId, incoming, currentMaxVersion, rollup);
                 successIds.add(incoming.getId());
                 if (clientId != null && !clientId.isEmpty()) {
                     idMapping.put(clientId, incoming.getId());
@@ -103,6 +143,8 @@ public class SyncService {
             }
         }
         
+        monthlyRollupService.apply(rollup);
+        
         Map<String, Object> result = new HashMap<>();
         result.put("success_ids", successIds);
         result.put("failed_ids", failedIds);
@@ -111,7 +153,11 @@ public class SyncService {
         return result;
     }
 
-    private void processIncomingTransaction(String userId, Transaction incoming, Long currentVersion) {
+    /**
+     * 合并一条记录；成功写入时把它对月度汇总的变化量累加到 rollup
+     */
+    private void processIncomingTransaction(String userId, Transaction incoming, Long currentVersion,
+                                            MonthlyRollupService.Delta rollup) {
         incoming.setUserId(userId);
         if (incoming.getUpdatedAt() == null) {
             incoming.setUpdatedAt(LocalDateTime.now());
@@ -119,7 +165,11 @@ public class SyncService {
         Transaction existing = transactionRepository.findById(incoming.getId()).orElse(null);
         if (existing == null) {
             saveAndLog(incoming, SyncLog.Action.ADD, currentVersion + 1);
+            rollup.add(incoming);
         } else {
+            // saveAndLog 会把新值合并进 existing，先记下原归属和原汇总位置
+            String previousOwner = existing.getUserId();
+            MonthlyRollupService.Delta change = new MonthlyRollupService.Delta().remove(existing).add(incoming);
             int affected = transactionRepository.updateIfNewer(
                     incoming.getId(),
                     incoming.getUserId(),
@@ -128,11 +178,18 @@ public class SyncService {
                     incoming.getCategoryId(),
                     incoming.getDescription(),
                     incoming.getDate(),
+                    Transaction.monthKeyOf(incoming.getDate()),
                     incoming.getUpdatedAt(),
                     incoming.getTags()
             );
             if (affected > 0) {
                 saveAndLog(incoming, SyncLog.Action.UPDATE, currentVersion + 1);
+                rollup.addAll(change);
+                // 记录被当前用户接管时，原归属用户的关键字缓存和统计缓存收不到这条变更
+                if (!Objects.equals(userId, previousOwner)) {
+                    keywordSearchCache.invalidate(previousOwner);
+                    statisticCache.invalidate(previousOwner);
+                }
             }
         }
     }
@@ -0,0 +1,87 @@
+package com.accounting.service;
+
+import com.accounting.model.Transaction;
+import com.accounting.model.TransactionSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * 账目列表的分页游标
+ * 列表按 (date, id) 倒序：有日期的记录在前，无日期的记录在后按 id 倒序。
+ * 游标记录上一页最后一条的 (date, id)，对客户端是不透明的 Base64 字符串。
+ */
+final class TransactionCursor {
+    /**
+     * 与分页查询一致的排序
+     */
+    static final Comparator<Transaction> ORDER = (a, b) -> compare(a.getDate(), a.getId(), b.getDate(), b.getId());
+    static final Comparator<TransactionSummary> SUMMARY_ORDER = (a, b) -> compare(a.date(), a.id(), b.date(), b.id());
+
+    // 上一页最后一条的日期；null 表示已进入无日期记录部分
+    final LocalDateTime date;
+    final String id;
+
+    private TransactionCursor(LocalDateTime date, String id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * 记录是否排在游标之后
+     */
+    boolean precedes(Transaction t) {
+        return compare(date, id, t.getDate(), t.getId()) < 0;
+    }
+
+    boolean precedes(TransactionSummary s) {
+        return compare(date, id, s.date(), s.id()) < 0;
+    }
+
+    static String encode(Transaction last) {
+        return encode(last.getDate(), last.getId());
+    }
+
+    static String encode(TransactionSummary last) {
+        return encode(last.date(), last.id());
+    }
+
+    private static String encode(LocalDateTime date, String id) {
+        String raw = (date != null ? date.toString() : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，空串或 null 表示第一页
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    static TransactionCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            if (sep < 0 || sep == raw.length() - 1) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+            LocalDateTime date = sep == 0 ? null : LocalDateTime.parse(raw.substring(0, sep));
+            return new TransactionCursor(date, raw.substring(sep + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标", e);
+        }
+    }
+
+    private static int compare(LocalDateTime d1, String id1, LocalDateTime d2, String id2) {
+        if (d1 == null || d2 == null) {
+            if (d1 != d2) return d1 == null ? 1 : -1;
+        } else {
+            int c = d2.compareTo(d1);
+            if (c != 0) return c;
+        }
+        return id2.compareTo(id1);
+    }
+}
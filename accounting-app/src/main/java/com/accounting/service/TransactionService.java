@@ -3,26 +3,43 @@ package com.accounting.service;
 import com.accounting.filter.FilterRule;
 import com.accounting.model.SyncLog;
 import com.accounting.model.Transaction;
+import com.accounting.model.TransactionSummary;
 import com.accounting.repository.SyncLogRepository;
 import com.accounting.repository.TransactionRepository;
+import com.accounting.repository.TransactionSpecifications;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 交易服务类
@@ -31,13 +48,28 @@ import java.util.stream.Collectors;
 @Service
 @Transactional
 public class TransactionService {
+    // 批量导入每批 flush 一次，与 hibernate.jdbc.batch_size 保持一致
+    private static final int BULK_CHUNK_SIZE = 500;
+    // 分页查询每页条数上限
+    public static final int MAX_PAGE_SIZE = 500;
     private final TransactionRepository transactionRepository;
     private final SyncLogRepository syncLogRepository;
+    private final KeywordSearchCache keywordSearchCache;
+    private final MonthlyRollupService monthlyRollupService;
+    private final StatisticCache statisticCache;
     private final Gson gson;
     
-    public TransactionService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository) {
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    public TransactionService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository,
+                              KeywordSearchCache keywordSearchCache, MonthlyRollupService monthlyRollupService,
+                              StatisticCache statisticCache) {
         this.transactionRepository = transactionRepository;
         this.syncLogRepository = syncLogRepository;
+        this.keywordSearchCache = keywordSearchCache;
+        this.monthlyRollupService = monthlyRollupService;
+        this.statisticCache = statisticCache;
         
         JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
         JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
@@ -55,9 +87,11 @@ public class TransactionService {
         transaction.setUpdatedAt(LocalDateTime.now());
         
         Transaction saved = transactionRepository.save(transaction);
+        monthlyRollupService.apply(new MonthlyRollupService.Delta().add(saved));
         
         // 记录同步日志
         recordSyncLog(saved, SyncLog.Action.ADD);
+        invalidateCaches(null, saved);
         
         return saved;
     }
@@ -70,7 +104,9 @@ public class TransactionService {
             Transaction t = transactionRepository.findById(transactionId).orElse(null);
             if (t != null) {
                 transactionRepository.deleteById(transactionId);
+                monthlyRollupService.apply(new MonthlyRollupService.Delta().remove(t));
                 recordSyncLog(t, SyncLog.Action.DELETE);
+                invalidateCaches(null, t);
                 return true;
             }
         }
@@ -94,9 +130,14 @@ public class TransactionService {
             if (updatedTransaction.getUpdatedAt() == null) {
                 updatedTransaction.setUpdatedAt(LocalDateTime.now());
             }
+            // save 会把新值合并进 existing，先记下原归属和原汇总位置
+            String previousOwner = existing.getUserId();
+            MonthlyRollupService.Delta rollup = new MonthlyRollupService.Delta().remove(existing);
             
             Transaction saved = transactionRepository.save(updatedTransaction);
+            monthlyRollupService.apply(rollup.add(saved));
             recordSyncLog(saved, SyncLog.Action.UPDATE);
+            invalidateCaches(previousOwner, saved);
             return saved;
         }).orElse(null);
     }
@@ -138,13 +179,29 @@ public class TransactionService {
                 t.setCreatedAt(t.getCreatedAt() != null ? t.getCreatedAt() : LocalDateTime.now());
                 t.setUpdatedAt(t.getUpdatedAt() != null ? t.getUpdatedAt() : LocalDateTime.now());
                 Transaction saved = transactionRepository.save(t);
+                monthlyRollupService.apply(new MonthlyRollupService.Delta().add(saved));
                 recordSyncLog(saved, SyncLog.Action.ADD);
+                invalidateCaches(null, saved);
                 idMapping.put(originalId, saved.getId());
             }
         }
         return idMapping;
     }
     
+    /**
+     * 关键字缓存和统计缓存靠同步日志版本发现修改，不写日志的修改需要显式作废：
+     * 公共记录（无归属）影响所有用户，归属变更时原用户的缓存里还留着该记录；两个缓存都在事务提交后才作废
+     */
+    private void invalidateCaches(String previousOwner, Transaction saved) {
+        if (saved.getUserId() == null) {
+            keywordSearchCache.invalidateAll();
+            statisticCache.invalidateAll();
+        } else if (previousOwner != null && !previousOwner.equals(saved.getUserId())) {
+            keywordSearchCache.invalidate(previousOwner);
+            statisticCache.invalidate(previousOwner);
+        }
+    }
+    
     /**
      * 记录同步日志
      */
@@ -152,15 +209,18 @@ public class TransactionService {
         if (transaction.getUserId() == null) return;
         
         Long currentMaxVersion = syncLogRepository.getMaxVersion(transaction.getUserId());
-        SyncLog log = new SyncLog(
+        syncLogRepository.save(newSyncLog(transaction, action, currentMaxVersion + 1));
+    }
+    
+    private SyncLog newSyncLog(Transaction transaction, SyncLog.Action action, Long version) {
+        return new SyncLog(
             transaction.getId(),
             transaction.getUserId(),
             action,
             "Transaction",
             action == SyncLog.Action.DELETE ? null : gson.toJson(transaction),
-            currentMaxVersion + 1
+            version
         );
-        syncLogRepository.save(log);
     }
     
     /**
@@ -186,16 +246,237 @@ public class TransactionService {
     }
     
     /**
-     * 使用过滤规则查询交易
+     * 使用过滤规则查询交易（规则编译为 SQL 条件，在数据库中过滤）
      */
     public List<Transaction> filterTransactions(FilterRule rule) {
-        List<Transaction> all = getAllTransactions();
         if (rule == null) {
-            return all;
+            return getAllTransactions();
         }
-        return all.stream()
-            .filter(rule::test)
-            .collect(Collectors.toList());
+        return transactionRepository.findAll(TransactionSpecifications.fromRule(rule));
+    }
+    
+    /**
+     * 在用户可见的记录中按规则过滤，只有命中的行会从数据库读出
+     */
+    public List<Transaction> filterTransactionsForUser(String userId, FilterRule rule) {
+        String keyword = keywordOf(rule);
+        if (keyword != null) {
+            // 关键字走用户的倒排索引缓存，其余条件在命中的少量记录上检查
+            return keywordSearchCache.search(userId, keyword, rule);
+        }
+        Specification<Transaction> spec = TransactionSpecifications.visibleTo(userId);
+        if (rule != null) {
+            spec = spec.and(TransactionSpecifications.fromRule(rule));
+        }
+        return transactionRepository.findAll(spec);
+    }
+    
+    /**
+     * 逐行读取用户可见且满足规则的记录并交给 sink，语义同 filterTransactionsForUser
+     * 结果不在内存中汇总：每行交出后即从持久化上下文中移除，内存占用与记录数无关
+     * @param rule 过滤规则，可为 null
+     */
+    @Transactional(readOnly = true)
+    public void streamTransactionsForUser(String userId, FilterRule rule, Consumer<? super Transaction> sink) {
+        String keyword = keywordOf(rule);
+        if (keyword != null) {
+            // 命中集合已在关键字缓存中
+            keywordSearchCache.search(userId, keyword, rule).forEach(sink);
+            return;
+        }
+        try (Stream<Transaction> rows = rule == null || rule.getKind() == FilterRule.Kind.ALL
+                ? transactionRepository.streamVisibleForUser(userId)
+                : streamFiltered(userId, rule)) {
+            rows.forEach(t -> {
+                sink.accept(t);
+                entityManager.detach(t);
+            });
+        }
+    }
+    
+    private Stream<Transaction> streamFiltered(String userId, FilterRule rule) {
+        return criteriaQuery(Transaction.class, userId, rule, null)
+            .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+    }
+    
+    /**
+     * 逐行读取用户可见且满足规则的记录摘要，语义同 streamTransactionsForUser
+     * 只查询摘要列并直接构造投影，不生成托管实体
+     * @param rule 过滤规则，可为 null
+     */
+    @Transactional(readOnly = true)
+    public void streamSummariesForUser(String userId, FilterRule rule, Consumer<? super TransactionSummary> sink) {
+        String keyword = keywordOf(rule);
+        if (keyword != null) {
+            for (Transaction t : keywordSearchCache.search(userId, keyword, rule)) {
+                sink.accept(TransactionSummary.of(t));
+            }
+            return;
+        }
+        try (Stream<TransactionSummary> rows = rule == null || rule.getKind() == FilterRule.Kind.ALL
+                ? transactionRepository.streamSummariesForUser(userId)
+                : criteriaQuery(TransactionSummary.class, userId, rule, null)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+                    .getResultStream()) {
+            rows.forEach(sink);
+        }
+    }
+    
+    /**
+     * 按 (date, id) 倒序分页读取用户可见的记录
+     * 返回 {items, next_cursor}，next_cursor 为 null 表示已到最后一页；
+     * 每次只从数据库读出 limit+1 行，响应大小和内存占用与总记录数无关
+     * @param rule 过滤规则，可为 null
+     * @param cursor 上一页返回的 next_cursor，第一页传 null
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> pageTransactionsForUser(String userId, FilterRule rule, String cursor, int limit) {
+        TransactionCursor after = TransactionCursor.decode(cursor);
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // 多取一行判断是否还有下一页
+        List<Transaction> rows;
+        String keyword = keywordOf(rule);
+        if (keyword != null) {
+            rows = keywordSearchCache.search(userId, keyword, rule).stream()
+                .filter(t -> after == null || after.precedes(t))
+                .sorted(TransactionCursor.ORDER)
+                .limit(size + 1)
+                .collect(Collectors.toList());
+        } else {
+            rows = findPage(userId, rule, after, size + 1);
+        }
+        
+        String next = null;
+        if (rows.size() > size) {
+            rows = new ArrayList<>(rows.subList(0, size));
+            next = TransactionCursor.encode(rows.get(size - 1));
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", rows);
+        page.put("next_cursor", next);
+        return page;
+    }
+    
+    /**
+     * 按 (date, id) 倒序分页读取用户可见的记录摘要，分页方式和游标同 pageTransactionsForUser
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> pageSummariesForUser(String userId, FilterRule rule, String cursor, int limit) {
+        TransactionCursor after = TransactionCursor.decode(cursor);
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<TransactionSummary> rows;
+        String keyword = keywordOf(rule);
+        if (keyword != null) {
+            rows = keywordSearchCache.search(userId, keyword, rule).stream()
+                .map(TransactionSummary::of)
+                .filter(t -> after == null || after.precedes(t))
+                .sorted(TransactionCursor.SUMMARY_ORDER)
+                .limit(size + 1)
+                .collect(Collectors.toList());
+        } else {
+            rows = keysetPage(TransactionSummary.class, userId, rule, after, size + 1);
+        }
+        
+        String next = null;
+        if (rows.size() > size) {
+            rows = new ArrayList<>(rows.subList(0, size));
+            next = TransactionCursor.encode(rows.get(size - 1));
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", rows);
+        page.put("next_cursor", next);
+        return page;
+    }
+    
+    /**
+     * 先读有日期的记录，不足一页时接着读无日期的记录；无过滤条件时走仓库的键集查询
+     */
+    private List<Transaction> findPage(String userId, FilterRule rule, TransactionCursor after, int fetch) {
+        if (rule != null && rule.getKind() != FilterRule.Kind.ALL) {
+            return keysetPage(Transaction.class, userId, rule, after, fetch);
+        }
+        List<Transaction> rows = new ArrayList<>(fetch);
+        if (after == null || after.date != null) {
+            rows.addAll(after == null
+                ? transactionRepository.findVisibleDatedFirst(userId, PageRequest.of(0, fetch))
+                : transactionRepository.findVisibleDatedAfter(userId, after.date, after.id, PageRequest.of(0, fetch)));
+        }
+        int remaining = fetch - rows.size();
+        if (remaining > 0) {
+            String afterId = after != null && after.date == null ? after.id : null;
+            rows.addAll(afterId == null
+                ? transactionRepository.findVisibleUndatedFirst(userId, PageRequest.of(0, remaining))
+                : transactionRepository.findVisibleUndatedAfter(userId, afterId, PageRequest.of(0, remaining)));
+        }
+        return rows;
+    }
+    
+    /**
+     * 带过滤条件的键集分页，顺序同 findPage
+     */
+    private <R> List<R> keysetPage(Class<R> resultType, String userId, FilterRule rule, TransactionCursor after, int fetch) {
+        List<R> rows = new ArrayList<>(fetch);
+        if (after == null || after.date != null) {
+            Specification<Transaction> keyset = TransactionSpecifications.datedAfter(
+                after != null ? after.date : null, after != null ? after.id : null);
+            rows.addAll(criteriaQuery(resultType, userId, rule, keyset).setMaxResults(fetch).getResultList());
+        }
+        int remaining = fetch - rows.size();
+        if (remaining > 0) {
+            String afterId = after != null && after.date == null ? after.id : null;
+            Specification<Transaction> keyset = TransactionSpecifications.undatedAfter(afterId);
+            rows.addAll(criteriaQuery(resultType, userId, rule, keyset).setMaxResults(remaining).getResultList());
+        }
+        return rows;
+    }
+    
+    /**
+     * 用户可见且满足规则的 Criteria 查询；Specification 没有只取前 N 行或投影的接口，直接用 Criteria
+     * resultType 为 TransactionSummary 时只选摘要列；给出键集条件时按 (date, id) 倒序
+     */
+    private <R> TypedQuery<R> criteriaQuery(Class<R> resultType, String userId, FilterRule rule,
+                                            Specification<Transaction> keyset) {
+        Specification<Transaction> spec = TransactionSpecifications.visibleTo(userId);
+        if (rule != null) {
+            spec = spec.and(TransactionSpecifications.fromRule(rule));
+        }
+        if (keyset != null) {
+            spec = spec.and(keyset);
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = cb.createQuery(resultType);
+        Root<Transaction> root = query.from(Transaction.class);
+        if (resultType == TransactionSummary.class) {
+            query.multiselect(root.get("id"), root.get("date"), root.get("amount"), root.get("type"), root.get("categoryId"));
+        }
+        query.where(spec.toPredicate(root, query, cb));
+        if (keyset != null) {
+            query.orderBy(cb.desc(root.get("date")), cb.desc(root.get("id")));
+        }
+        return entityManager.createQuery(query);
+    }
+    
+    /**
+     * 规则顶层 AND 中的关键字条件，没有时返回 null
+     */
+    private static String keywordOf(FilterRule rule) {
+        if (rule == null) {
+            return null;
+        }
+        if (rule.getKind() == FilterRule.Kind.KEYWORD) {
+            return rule.getKeyword();
+        }
+        if (rule.getKind() == FilterRule.Kind.AND) {
+            for (FilterRule child : rule.getChildren()) {
+                String keyword = keywordOf(child);
+                if (keyword != null) return keyword;
+            }
+        }
+        return null;
     }
     
     /**
@@ -279,15 +560,22 @@ public class TransactionService {
      * 从CSV导入
      */
     public List<Transaction> importFromCSV(String filePath) throws IOException {
+        return importFromCSV(filePath, null);
+    }
+    
+    /**
+     * 从CSV导入，按批写入并回调进度 (已处理条数, 总条数)
+     */
+    public List<Transaction> importFromCSV(String filePath, BiConsumer<Integer, Integer> progress) throws IOException {
         List<Transaction> imported = new ArrayList<>();
         Path path = Paths.get(filePath);
         
-        try (Reader reader = Files.newBufferedReader(path)) {
-            List<String> lines = Files.readAllLines(path);
-            
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
             // 跳过表头
-            for (int i = 1; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
                 if (parts.length >= 7) {
                     Transaction t = new Transaction();
                     t.setId(parts[0]);
@@ -305,10 +593,8 @@ public class TransactionService {
             }
         }
         
-        // 添加到现有交易列表
-        for (Transaction t : imported) {
-            addTransaction(t);
-        }
+        // 批量添加到现有交易列表
+        addTransactions(imported, progress);
         
         return imported;
     }
@@ -317,9 +603,74 @@ public class TransactionService {
      * 批量添加交易
      */
     public void addTransactions(List<Transaction> transactions) {
-        for (Transaction t : transactions) {
-            addTransaction(t);
+        addTransactions(transactions, null);
+    }
+    
+    /**
+     * 批量添加交易
+     * <p>
+     * 每批先用一次 IN 查询找出已存在的ID，新记录 persist、已存在记录 merge，
+     * 再 flush 交给 JDBC batch 写入并清空持久化上下文；
+     * 同步日志版本号按用户只查询一次 MAX，之后在内存中连续分配。
+     * </p>
+     * @param progress 进度回调 (已处理条数, 总条数)，可为 null
+     */
+    public void addTransactions(List<Transaction> batch, BiConsumer<Integer, Integer> progress) {
+        int total = batch.size();
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Long> lastVersions = new HashMap<>();
+        
+        for (int from = 0; from < total; from += BULK_CHUNK_SIZE) {
+            int to = Math.min(from + BULK_CHUNK_SIZE, total);
+            List<Transaction> chunk = batch.subList(from, to);
+            
+            List<String> ids = new ArrayList<>(chunk.size());
+            for (Transaction t : chunk) {
+                if (t.getId() == null || t.getId().isEmpty()) {
+                    t.setId(UUID.randomUUID().toString());
+                }
+                t.setCreatedAt(now);
+                t.setUpdatedAt(now);
+                ids.add(t.getId());
+            }
+            // 每个ID当前的记录（库中已有的或本批前面写入的），合并覆盖前先从汇总中减去
+            Map<String, Transaction> existing = new HashMap<>();
+            for (Transaction e : transactionRepository.findAllById(ids)) {
+                existing.put(e.getId(), e);
+            }
+            MonthlyRollupService.Delta rollup = new MonthlyRollupService.Delta();
+            
+            for (Transaction t : chunk) {
+                SyncLog.Action action;
+                Transaction previous = existing.get(t.getId());
+                if (previous != null) {
+                    rollup.remove(previous);
+                    entityManager.merge(t);
+                    action = SyncLog.Action.UPDATE;
+                } else {
+                    entityManager.persist(t);
+                    action = SyncLog.Action.ADD;
+                }
+                rollup.add(t);
+                existing.put(t.getId(), t);
+                String userId = t.getUserId();
+                if (userId != null) {
+                    long version = lastVersions.computeIfAbsent(userId, syncLogRepository::getMaxVersion) + 1;
+                    lastVersions.put(userId, version);
+                    entityManager.persist(newSyncLog(t, action, version));
+                }
+            }
+            monthlyRollupService.apply(rollup);
+            entityManager.flush();
+            entityManager.clear();
+            
+            if (progress != null) {
+                progress.accept(to, total);
+            }
         }
+        // 批量写入可能改变归属或涉及公共记录，直接作废
+        keywordSearchCache.invalidateAll();
+        statisticCache.invalidateAll();
     }
     
     /**
@@ -328,9 +679,12 @@ public class TransactionService {
     public void clearAllTransactions() {
         List<Transaction> all = transactionRepository.findAll();
         transactionRepository.deleteAll();
+        monthlyRollupService.clear();
         for(Transaction t : all) {
             recordSyncLog(t, SyncLog.Action.DELETE);
         }
+        keywordSearchCache.invalidateAll();
+        statisticCache.invalidateAll();
     }
     
     /**
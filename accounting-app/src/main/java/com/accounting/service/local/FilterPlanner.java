@@ -0,0 +1,520 @@
+package com.accounting.service.local;
+
+import com.accounting.filter.FilterRule;
+import com.accounting.filter.FilterStatistics;
+import com.accounting.model.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 本地过滤查询规划器
+ * 针对一份只读快照建立索引：日期、金额为有序索引，分类、类型为行号位图（RowBitmap），各索引首次用到时建立；
+ * 关键字和日期条件优先走账本随增删改维护的索引（关键字倒排索引、分区内日期 TreeMap），
+ * 账本已比快照新时退回快照自己的索引或逐行检查。
+ * 规划时把 FilterRule 顶层的 AND 拆成合取项：只由分类、类型组成的合取项（含 AND/OR/NOT 组合）
+ * 直接按位图交并补求值；日期、金额、关键字叶子的候选行不超过总行数一定比例时也转成位图参与求交。
+ * 各位图按候选行数从少到多求交，得到的行号再逐行检查其余合取项；没有可用索引时全表扫描。
+ * 残余条件按快照统计（FilterStatistics）估计的代价和选择性排序，便宜且选择性高的先检查。
+ * 结果按快照中的顺序返回，与全表扫描完全一致。快照不可变，规划器可被多个读者并发使用。
+ */
+final class FilterPlanner {
+    // 日期/金额/关键字的候选行超过总行数的该比例时，转成位图不如留作残余条件逐行检查
+    private static final double MAX_INDEX_FRACTION = 0.5;
+
+    /**
+     * 访问路径
+     */
+    enum Access {
+        FULL_SCAN("全表扫描"),
+        DATE_INDEX("日期索引"),
+        CATEGORY_INDEX("分类索引"),
+        TYPE_INDEX("类型索引"),
+        AMOUNT_INDEX("金额索引"),
+        KEYWORD_INDEX("关键字索引"),
+        BITMAP_INDEX("位图索引");
+
+        private final String displayName;
+
+        Access(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * 执行计划：各索引求交得到的候选行位图 + 残余过滤条件
+     */
+    static final class Plan {
+        private final List<Access> accesses;
+        private final List<FilterRule> driving;
+        private final List<FilterRule> residual;
+        private final int totalRows;
+        // 候选行号；null 表示全表扫描
+        private final RowBitmap candidates;
+
+        private Plan(List<Access> accesses, List<FilterRule> driving, List<FilterRule> residual, int totalRows,
+                     RowBitmap candidates) {
+            this.accesses = accesses;
+            this.driving = driving;
+            this.residual = residual;
+            this.totalRows = totalRows;
+            this.candidates = candidates;
+        }
+
+        /**
+         * 参与求交的索引，按求交顺序；全表扫描时为 [FULL_SCAN]
+         */
+        List<Access> getAccesses() {
+            return accesses;
+        }
+
+        List<FilterRule> getResidual() {
+            return residual;
+        }
+
+        /**
+         * 索引求交后的候选行数
+         */
+        int getCandidateRows() {
+            return candidates == null ? totalRows : candidates.cardinality();
+        }
+
+        /**
+         * 计划说明，供调试使用
+         */
+        String explain() {
+            StringBuilder sb = new StringBuilder("访问路径: ");
+            for (int i = 0; i < accesses.size(); i++) {
+                if (i > 0) sb.append(" ∩ ");
+                sb.append(accesses.get(i).displayName);
+                if (i < driving.size()) {
+                    sb.append(" (").append(driving.get(i).getDescription()).append(")");
+                }
+            }
+            sb.append("，候选 ").append(getCandidateRows()).append("/").append(totalRows).append(" 行");
+            if (residual.isEmpty()) {
+                sb.append("；无残余过滤");
+            } else {
+                sb.append("；残余过滤: ").append(residual.stream()
+                    .map(FilterRule::getDescription)
+                    .collect(Collectors.joining(" AND ")));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 一个可走索引的合取项：estimate 为候选行数（位图合取项为精确值），bitmap 在求交时才取
+     */
+    private static final class Step {
+        final Access access;
+        final FilterRule rule;
+        final int estimate;
+        final Supplier<RowBitmap> bitmap;
+
+        Step(Access access, FilterRule rule, int estimate, Supplier<RowBitmap> bitmap) {
+            this.access = access;
+            this.rule = rule;
+            this.estimate = estimate;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final List<Transaction> rows;
+    // 在账本维护的索引中查找关键字/日期叶子的命中记录；返回 null 表示不可用（如与快照版本不一致）
+    private final Function<FilterRule, List<Transaction>> indexLookup;
+    // 各索引在首次用到时建立；并发首次访问可能重复建立，结果相同
+    private volatile DateIndex dateIndex;
+    private volatile AmountIndex amountIndex;
+    private volatile Map<String, RowBitmap> byCategory;
+    private volatile Map<Transaction.TransactionType, RowBitmap> byType;
+    private volatile Map<Transaction, Integer> ordinals;
+    private volatile FilterStatistics statistics;
+
+    /**
+     * 按日期升序排列的行号；keys[i] 为 order[i] 行的日期
+     */
+    private static final class DateIndex {
+        final int[] order;
+        final LocalDateTime[] keys;
+
+        DateIndex(int[] order, LocalDateTime[] keys) {
+            this.order = order;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * 按金额升序排列的行号；keys[i] 为 order[i] 行的金额
+     */
+    private static final class AmountIndex {
+        final int[] order;
+        final double[] keys;
+
+        AmountIndex(int[] order, double[] keys) {
+            this.order = order;
+            this.keys = keys;
+        }
+    }
+
+    FilterPlanner(List<Transaction> rows, Function<FilterRule, List<Transaction>> indexLookup) {
+        this.rows = rows;
+        this.indexLookup = indexLookup;
+    }
+
+    // 有日期的行，按日期升序
+    private DateIndex dateIndex() {
+        DateIndex idx = dateIndex;
+        if (idx == null) {
+            List<Integer> dated = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).getDate() != null) dated.add(i);
+            }
+            dated.sort((a, b) -> rows.get(a).getDate().compareTo(rows.get(b).getDate()));
+            int[] order = new int[dated.size()];
+            LocalDateTime[] keys = new LocalDateTime[dated.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = dated.get(i);
+                keys[i] = rows.get(order[i]).getDate();
+            }
+            idx = new DateIndex(order, keys);
+            dateIndex = idx;
+        }
+        return idx;
+    }
+
+    // 金额非 NaN 的行，按金额升序
+    private AmountIndex amountIndex() {
+        AmountIndex idx = amountIndex;
+        if (idx == null) {
+            List<Integer> priced = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                if (!Double.isNaN(rows.get(i).getAmount())) priced.add(i);
+            }
+            priced.sort((a, b) -> Double.compare(rows.get(a).getAmount(), rows.get(b).getAmount()));
+            int[] order = new int[priced.size()];
+            double[] keys = new double[priced.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = priced.get(i);
+                keys[i] = rows.get(order[i]).getAmount();
+            }
+            idx = new AmountIndex(order, keys);
+            amountIndex = idx;
+        }
+        return idx;
+    }
+
+    private Map<String, RowBitmap> categoryIndex() {
+        Map<String, RowBitmap> idx = byCategory;
+        if (idx == null) {
+            idx = postings(Transaction::getCategoryId, new HashMap<>());
+            byCategory = idx;
+        }
+        return idx;
+    }
+
+    private Map<Transaction.TransactionType, RowBitmap> typeIndex() {
+        Map<Transaction.TransactionType, RowBitmap> idx = byType;
+        if (idx == null) {
+            idx = postings(Transaction::getType, new EnumMap<>(Transaction.TransactionType.class));
+            byType = idx;
+        }
+        return idx;
+    }
+
+    /**
+     * 键 -> 行号位图；先计数再按行号顺序填入，各表天然升序
+     */
+    private <K> Map<K, RowBitmap> postings(Function<Transaction, K> key, Map<K, RowBitmap> out) {
+        Map<K, int[]> lists = new HashMap<>();
+        Map<K, Integer> counts = new HashMap<>();
+        for (Transaction t : rows) {
+            K k = key.apply(t);
+            if (k != null) counts.merge(k, 1, Integer::sum);
+        }
+        counts.forEach((k, c) -> lists.put(k, new int[c]));
+        Map<K, Integer> fill = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            K k = key.apply(rows.get(i));
+            if (k != null) {
+                lists.get(k)[fill.merge(k, 1, Integer::sum) - 1] = i;
+            }
+        }
+        lists.forEach((k, list) -> out.put(k, RowBitmap.ofSorted(list, 0, list.length)));
+        return out;
+    }
+
+    private FilterStatistics statistics() {
+        FilterStatistics stats = statistics;
+        if (stats == null) {
+            stats = FilterStatistics.of(rows);
+            statistics = stats;
+        }
+        return stats;
+    }
+
+    // 记录 -> 行号，用于把账本索引的命中映射回快照
+    private Map<Transaction, Integer> ordinals() {
+        Map<Transaction, Integer> idx = ordinals;
+        if (idx == null) {
+            idx = new IdentityHashMap<>(rows.size() * 2);
+            for (int i = 0; i < rows.size(); i++) {
+                idx.put(rows.get(i), i);
+            }
+            ordinals = idx;
+        }
+        return idx;
+    }
+
+    /**
+     * 为规则生成执行计划
+     */
+    Plan plan(FilterRule rule) {
+        List<FilterRule> conjuncts = new ArrayList<>();
+        if (rule != null) {
+            // 组合规则按本快照的统计重新估计选择性，单个叶子无需排序
+            if (!rule.getChildren().isEmpty()) {
+                rule = rule.withStatistics(statistics());
+            }
+            flattenAnd(rule, conjuncts);
+            // 残余条件按此顺序逐行检查
+            conjuncts.sort(Comparator.comparingDouble(FilterRule::getRank));
+        }
+
+        List<Step> steps = new ArrayList<>();
+        for (FilterRule c : conjuncts) {
+            Step step = indexStep(c);
+            if (step != null) steps.add(step);
+        }
+        if (steps.isEmpty()) {
+            return new Plan(Collections.singletonList(Access.FULL_SCAN), Collections.emptyList(), conjuncts,
+                rows.size(), null);
+        }
+        // 从候选最少的开始求交，结果为空时后面的位图不必再取
+        steps.sort((a, b) -> Integer.compare(a.estimate, b.estimate));
+        List<Access> accesses = new ArrayList<>(steps.size());
+        List<FilterRule> driving = new ArrayList<>(steps.size());
+        RowBitmap candidates = null;
+        for (Step step : steps) {
+            candidates = candidates == null ? step.bitmap.get() : candidates.and(step.bitmap.get());
+            accesses.add(step.access);
+            driving.add(step.rule);
+            if (candidates.isEmpty()) break;
+        }
+        // 求交中断时未用到的合取项不影响结果（候选已为空），一并从残余中去掉
+        List<FilterRule> residual = new ArrayList<>(conjuncts.size());
+        for (FilterRule c : conjuncts) {
+            if (!containsIdentity(driving, c)) residual.add(c);
+        }
+        if (candidates.isEmpty()) {
+            residual.clear();
+        }
+        return new Plan(accesses, driving, residual.isEmpty() ? Collections.emptyList() : residual,
+            rows.size(), candidates);
+    }
+
+    /**
+     * 执行计划，返回匹配的记录（按快照顺序）
+     * 待检查的行数达到 parallelThreshold 时分段并行检查，按段顺序拼接，结果与顺序执行相同
+     */
+    List<Transaction> execute(Plan plan, int parallelThreshold) {
+        List<FilterRule> residual = plan.residual;
+        if (plan.candidates == null) {
+            return ParallelScan.scan(rows.size(), parallelThreshold, ArrayList::new, (acc, from, to) -> {
+                for (int i = from; i < to; i++) {
+                    Transaction t = rows.get(i);
+                    if (matches(t, residual)) acc.add(t);
+                }
+            }, ParallelScan::concat);
+        }
+        if (plan.candidates.cardinality() < parallelThreshold) {
+            List<Transaction> result = new ArrayList<>();
+            plan.candidates.forEach(i -> {
+                Transaction t = rows.get(i);
+                if (matches(t, residual)) result.add(t);
+            });
+            return result;
+        }
+        int[] ids = plan.candidates.toArray();
+        return ParallelScan.scan(ids.length, parallelThreshold, ArrayList::new, (acc, from, to) -> {
+            for (int i = from; i < to; i++) {
+                Transaction t = rows.get(ids[i]);
+                if (matches(t, residual)) acc.add(t);
+            }
+        }, ParallelScan::concat);
+    }
+
+    private static boolean matches(Transaction t, List<FilterRule> residual) {
+        for (FilterRule r : residual) {
+            if (!r.test(t)) return false;
+        }
+        return true;
+    }
+
+    private static boolean containsIdentity(List<FilterRule> list, FilterRule rule) {
+        for (FilterRule r : list) {
+            if (r == rule) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 把嵌套的 AND 展开为合取项，去掉恒真的 ALL
+     */
+    private static void flattenAnd(FilterRule rule, List<FilterRule> out) {
+        if (rule.getKind() == FilterRule.Kind.AND) {
+            for (FilterRule child : rule.getChildren()) {
+                flattenAnd(child, out);
+            }
+        } else if (rule.getKind() != FilterRule.Kind.ALL) {
+            out.add(rule);
+        }
+    }
+
+    /**
+     * 合取项可走索引时返回对应的求交步骤，否则返回 null
+     * 索引给出的候选行与合取项的结果完全一致，因此参与求交的合取项不再作为残余条件检查
+     */
+    private Step indexStep(FilterRule leaf) {
+        int n = rows.size();
+        int limit = (int) (n * MAX_INDEX_FRACTION);
+        switch (leaf.getKind()) {
+            case DATE_RANGE: {
+                LocalDateTime start = leaf.getStartDate();
+                LocalDateTime end = leaf.getEndDate();
+                if (start == null || end == null) return null;
+                List<Transaction> hits = indexLookup != null ? indexLookup.apply(leaf) : null;
+                if (hits != null) {
+                    if (hits.size() > limit) return null;
+                    Step viaLedger = ledgerStep(Access.DATE_INDEX, leaf, hits);
+                    if (viaLedger != null) return viaLedger;
+                }
+                DateIndex idx = dateIndex();
+                int lo = lowerBound(idx.keys, start);
+                int hi = Math.max(lo, upperBound(idx.keys, end));
+                return rangeStep(Access.DATE_INDEX, leaf, idx.order, lo, hi, limit);
+            }
+            case AMOUNT_RANGE: {
+                double min = leaf.getMinAmount();
+                double max = leaf.getMaxAmount();
+                if (Double.isNaN(min) || Double.isNaN(max)) return null;
+                AmountIndex idx = amountIndex();
+                int lo = lowerBound(idx.keys, min);
+                int hi = Math.max(lo, upperBound(idx.keys, max));
+                return rangeStep(Access.AMOUNT_INDEX, leaf, idx.order, lo, hi, limit);
+            }
+            case KEYWORD: {
+                List<Transaction> hits = indexLookup != null ? indexLookup.apply(leaf) : null;
+                return hits != null && hits.size() <= limit ? ledgerStep(Access.KEYWORD_INDEX, leaf, hits) : null;
+            }
+            default: {
+                RowBitmap bitmap = bitmapOf(leaf);
+                if (bitmap == null) return null;
+                Access access = leaf.getKind() == FilterRule.Kind.CATEGORY ? Access.CATEGORY_INDEX
+                    : leaf.getKind() == FilterRule.Kind.TYPE ? Access.TYPE_INDEX
+                    : Access.BITMAP_INDEX;
+                return new Step(access, leaf, bitmap.cardinality(), () -> bitmap);
+            }
+        }
+    }
+
+    /**
+     * 只由分类、类型条件（及 ALL）经 AND/OR/NOT 组成的规则按位图求值；含其它条件时返回 null
+     */
+    private RowBitmap bitmapOf(FilterRule rule) {
+        switch (rule.getKind()) {
+            case ALL:
+                return RowBitmap.range(rows.size());
+            case CATEGORY:
+                return categoryIndex().getOrDefault(rule.getCategoryId(), RowBitmap.empty());
+            case TYPE:
+                return typeIndex().getOrDefault(rule.getType(), RowBitmap.empty());
+            case AND:
+            case OR: {
+                RowBitmap left = bitmapOf(rule.getChildren().get(0));
+                if (left == null) return null;
+                RowBitmap right = bitmapOf(rule.getChildren().get(1));
+                if (right == null) return null;
+                return rule.getKind() == FilterRule.Kind.AND ? left.and(right) : left.or(right);
+            }
+            case NOT: {
+                RowBitmap inner = bitmapOf(rule.getChildren().get(0));
+                return inner != null ? inner.not(rows.size()) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 有序索引上的区间 order[lo, hi)：候选过多时不走索引
+     */
+    private static Step rangeStep(Access access, FilterRule leaf, int[] order, int lo, int hi, int limit) {
+        if (hi - lo > limit) return null;
+        return new Step(access, leaf, hi - lo, () -> RowBitmap.of(Arrays.copyOfRange(order, lo, hi)));
+    }
+
+    /**
+     * 把账本索引命中的记录映射回快照行号；有记录不在快照中时返回 null
+     */
+    private Step ledgerStep(Access access, FilterRule leaf, List<Transaction> hits) {
+        Map<Transaction, Integer> ordinalOf = ordinals();
+        int[] matched = new int[hits.size()];
+        for (int i = 0; i < matched.length; i++) {
+            Integer ordinal = ordinalOf.get(hits.get(i));
+            if (ordinal == null) return null;
+            matched[i] = ordinal;
+        }
+        return new Step(access, leaf, matched.length, () -> RowBitmap.of(matched));
+    }
+
+    // 第一个 >= key 的位置
+    private static int lowerBound(LocalDateTime[] keys, LocalDateTime key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].isBefore(key)) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // 第一个 > key 的位置
+    private static int upperBound(LocalDateTime[] keys, LocalDateTime key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].isAfter(key)) hi = mid; else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // 按数值比较（-0.0 与 0.0 相等），与金额谓词的 >= / <= 语义一致
+    private static int lowerBound(double[] keys, double key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(double[] keys, double key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] > key) hi = mid; else lo = mid + 1;
+        }
+        return lo;
+    }
+}
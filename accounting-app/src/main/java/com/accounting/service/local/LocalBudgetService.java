@@ -3,55 +3,88 @@ package com.accounting.service.local;
 import com.accounting.model.Budget;
 import com.accounting.model.Transaction;
 import com.accounting.storage.StorageManager;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.accounting.util.BudgetTypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
  * 本地预算服务类
+ * 预算列表采用写时复制，后台分析线程读取时不会与界面线程的修改冲突
  */
 public class LocalBudgetService {
     private static final String BUDGETS_FILE = "budgets.json";
     private final StorageManager storageManager;
     private final LocalTransactionService transactionService;
-    private final Gson gson;
+    private final BudgetTypeAdapter budgetAdapter;
     private List<Budget> budgets;
 
     public LocalBudgetService(StorageManager storageManager, LocalTransactionService transactionService) {
         this.storageManager = storageManager;
         this.transactionService = transactionService;
-        this.gson = new Gson();
-        this.budgets = new ArrayList<>();
+        this.budgetAdapter = new BudgetTypeAdapter();
+        this.budgets = new CopyOnWriteArrayList<>();
         loadBudgets();
     }
 
     private void loadBudgets() {
-        try {
-            String json = storageManager.readFile(BUDGETS_FILE);
-            if (json != null && !json.trim().isEmpty()) {
-                budgets = gson.fromJson(json, new TypeToken<List<Budget>>(){}.getType());
-                if (budgets == null) budgets = new ArrayList<>();
+        List<Budget> loaded = new ArrayList<>();
+        try (BufferedReader reader = storageManager.openReader(BUDGETS_FILE)) {
+            if (reader != null) {
+                JsonReader in = new JsonReader(reader);
+                if (!isEmpty(in) && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Budget b = budgetAdapter.read(in);
+                        if (b != null) loaded.add(b);
+                    }
+                    in.endArray();
+                }
             }
+            budgets = new CopyOnWriteArrayList<>(loaded);
         } catch (Exception e) {
-            budgets = new ArrayList<>();
+            budgets = new CopyOnWriteArrayList<>();
         }
     }
 
-    private void saveBudgets() {
+    private static boolean isEmpty(JsonReader in) throws IOException {
         try {
-            storageManager.writeFile(BUDGETS_FILE, gson.toJson(budgets));
+            return in.peek() == JsonToken.END_DOCUMENT;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    private void saveBudgets() {
+        // 预算对象会被原地修改，先在当前线程序列化，再交给存储层（可能是后台写入）
+        StringWriter buffer = new StringWriter();
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.setSerializeNulls(false);
+            out.beginArray();
+            for (Budget b : budgets) {
+                budgetAdapter.write(out, b);
+            }
+            out.endArray();
+            out.flush();
+            storageManager.writeFile(BUDGETS_FILE, buffer.toString());
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    public Budget setMonthlyBudget(String userId, String categoryId, double amount, int year, int month) {
+    public synchronized Budget setMonthlyBudget(String userId, String categoryId, double amount, int year, int month) {
         Budget existing = budgets.stream()
                 .filter(b -> (userId == null || userId.equals(b.getUserId())) &&
                         (categoryId == null ? b.getCategoryId() == null : categoryId.equals(b.getCategoryId())) &&
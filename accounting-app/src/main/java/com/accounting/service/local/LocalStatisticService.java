@@ -1,15 +1,24 @@
 package com.accounting.service.local;
 
-import com.accounting.model.Transaction;
+import com.accounting.stats.MonthlyAggregates;
+import com.accounting.storage.ColumnarSegment;
+import com.accounting.storage.PartitionManifest;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.stream.Collectors;
 
 /**
  * 本地统计服务类
+ * 聚合直接扫描列式段中的基本类型列，金额按分累加
+ * 按月分区存储，只扫描查询涉及月份的分区段；不限用户的月度合计直接取分区清单
+ * 月度、年度收支一次扫描汇总到 MonthlyAggregates，与服务端 StatisticService 共用
+ * 扫描行数达到 LocalTransactionService 的并行阈值时按行区间并行累加再合并，
+ * 分是整数，合并顺序不影响结果，与顺序扫描完全一致
  */
 public class LocalStatisticService {
     private LocalTransactionService transactionService;
@@ -18,170 +27,36 @@ public class LocalStatisticService {
         this.transactionService = transactionService;
     }
     
+    /**
+     * 最近 months 个月（含本月）的收支汇总，一次扫描得到收入、支出和条数序列
+     */
+    public MonthlyAggregates getMonthlyAggregates(String userId, int months) {
+        MonthlyAggregates shape = MonthlyAggregates.lastMonths(months);
+        return aggregate(userId, shape.month(0), shape.months());
+    }
+    
     public Map<YearMonth, Double> getMonthlyExpenses(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return getMonthlyAggregates(userId, months).expenses();
     }
     
     public Map<YearMonth, Double> getMonthlyIncome(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return getMonthlyAggregates(userId, months).incomes();
     }
     
     public Map<String, Double> getExpensesByCategory(String userId, YearMonth yearMonth) {
-        Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
-        }
-        
-        return categoryData;
+        return sumByCategory(userId, yearMonth, ColumnarSegment.TYPE_EXPENSE);
     }
     
     public Map<String, Double> getIncomesByCategory(String userId, YearMonth yearMonth) {
-        Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
-        }
-        
-        return categoryData;
+        return sumByCategory(userId, yearMonth, ColumnarSegment.TYPE_INCOME);
     }
     
     public Map<Integer, Double> getYearlyExpenses(String userId, int years) {
-        Map<Integer, Double> yearlyData = new HashMap<>();
-        int currentYear = LocalDate.now().getYear();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < years; i++) {
-            int year = currentYear - i;
-            LocalDate startDate = LocalDate.of(year, 1, 1);
-            LocalDate endDate = LocalDate.of(year, 12, 31);
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            yearlyData.put(year, total);
-        }
-        
-        return yearlyData;
+        return sumByYear(userId, years, ColumnarSegment.TYPE_EXPENSE);
     }
     
     public Map<Integer, Double> getYearlyIncome(String userId, int years) {
-        Map<Integer, Double> yearlyData = new HashMap<>();
-        int currentYear = LocalDate.now().getYear();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < years; i++) {
-            int year = currentYear - i;
-            LocalDate startDate = LocalDate.of(year, 1, 1);
-            LocalDate endDate = LocalDate.of(year, 12, 31);
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            yearlyData.put(year, total);
-        }
-        
-        return yearlyData;
+        return sumByYear(userId, years, ColumnarSegment.TYPE_INCOME);
     }
     
     public double predictNextMonthExpense(String userId, int months) {
@@ -252,34 +127,130 @@ public class LocalStatisticService {
     public Map<String, Object> getMonthlyStatistics(String userId, int year, int month) {
         Map<String, Object> stats = new HashMap<>();
         YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        List<Transaction> monthTransactions = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .collect(Collectors.toList());
-        
-        double totalIncome = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpense = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        long incomeCents = 0;
+        long expenseCents = 0;
+        int count = 0;
+        
+        if (userId == null || userId.isEmpty()) {
+            PartitionManifest.Entry summary = transactionService.getMonthSummary(yearMonth);
+            if (summary != null) {
+                incomeCents = summary.getIncomeCents();
+                expenseCents = summary.getExpenseCents();
+                count = summary.getCount();
+            }
+        } else {
+            MonthlyAggregates agg = aggregate(userId, yearMonth, 1);
+            incomeCents = agg.incomeCents(0);
+            expenseCents = agg.expenseCents(0);
+            count = agg.count(0);
+        }
         
+        double totalIncome = incomeCents / 100.0;
+        double totalExpense = expenseCents / 100.0;
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", monthTransactions.size());
+        stats.put("transactionCount", count);
         
         return stats;
     }
+    
+    // ---- 列式扫描 ----
+    
+    // 用户过滤：null/空表示不过滤；用户不在字典中表示没有匹配行
+    private static final int ANY_USER = -2;
+    
+    private int userFilter(ColumnarSegment seg, String userId) {
+        if (userId == null || userId.isEmpty()) return ANY_USER;
+        return seg.codeOf(userId);
+    }
+    
+    private int[] userFilters(List<ColumnarSegment> segs, String userId) {
+        int[] users = new int[segs.size()];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = userFilter(segs.get(i), userId);
+        }
+        return users;
+    }
+    
+    private static boolean matchesUser(ColumnarSegment seg, int row, int user) {
+        if (user == ANY_USER) return true;
+        return user != ColumnarSegment.NULL_CODE && seg.userCode(row) == user;
+    }
+    
+    /**
+     * 汇总 [first, first + months) 内各月的收支和条数
+     * 分区内的记录都属于该月：按分区月份定桶，不再逐行检查日期，只扫描涉及月份的分区
+     */
+    private MonthlyAggregates aggregate(String userId, YearMonth first, int months) {
+        MonthlyAggregates shape = new MonthlyAggregates(first, months);
+        if (shape.months() == 0) return shape;
+        NavigableMap<YearMonth, ColumnarSegment> parts =
+            transactionService.getMonthSegments(first, shape.month(shape.months() - 1));
+        List<ColumnarSegment> segs = new ArrayList<>(parts.values());
+        int[] monthOf = parts.keySet().stream().mapToInt(shape::monthOf).toArray();
+        int[] users = userFilters(segs, userId);
+        return ParallelScan.scanSegments(segs, transactionService.getParallelThreshold(),
+            () -> new MonthlyAggregates(first, months), (acc, i, seg, from, to) -> {
+                int user = users[i];
+                if (user == ColumnarSegment.NULL_CODE || monthOf[i] < 0) return;
+                long income = 0;
+                long expense = 0;
+                int count = 0;
+                for (int row = from; row < to; row++) {
+                    if (!matchesUser(seg, row, user)) continue;
+                    count++;
+                    byte type = seg.type(row);
+                    if (type == ColumnarSegment.TYPE_INCOME) {
+                        income += seg.amountCents(row);
+                    } else if (type == ColumnarSegment.TYPE_EXPENSE) {
+                        expense += seg.amountCents(row);
+                    }
+                }
+                acc.add(monthOf[i], income, expense, count);
+            }, MonthlyAggregates::merge);
+    }
+    
+    private Map<Integer, Double> sumByYear(String userId, int years, byte type) {
+        Map<Integer, Double> yearlyData = new HashMap<>();
+        if (years <= 0) return yearlyData;
+        int firstYear = LocalDate.now().getYear() - years + 1;
+        MonthlyAggregates agg = aggregate(userId, YearMonth.of(firstYear, 1), years * 12);
+        for (int y = 0; y < years; y++) {
+            long cents = 0;
+            for (int m = y * 12; m < (y + 1) * 12; m++) {
+                cents += type == ColumnarSegment.TYPE_INCOME ? agg.incomeCents(m) : agg.expenseCents(m);
+            }
+            yearlyData.put(firstYear + y, cents / 100.0);
+        }
+        return yearlyData;
+    }
+    
+    private Map<String, Double> sumByCategory(String userId, YearMonth yearMonth, byte type) {
+        List<ColumnarSegment> segs = transactionService.getColumnarSegments(yearMonth, yearMonth);
+        int[] users = userFilters(segs, userId);
+        Map<String, long[]> byCategory = ParallelScan.scanSegments(segs, transactionService.getParallelThreshold(),
+            HashMap::new, (acc, i, seg, from, to) -> {
+                int user = users[i];
+                if (user == ColumnarSegment.NULL_CODE) return;
+                // 字典编码只在单个段内有效，先按编码累加再换成分类名
+                Map<Integer, long[]> byCode = new HashMap<>();
+                for (int row = from; row < to; row++) {
+                    if (seg.type(row) != type || !matchesUser(seg, row, user)) continue;
+                    byCode.computeIfAbsent(seg.categoryCode(row), c -> new long[1])[0] += seg.amountCents(row);
+                }
+                for (Map.Entry<Integer, long[]> entry : byCode.entrySet()) {
+                    String category = seg.dictionaryValue(entry.getKey());
+                    acc.computeIfAbsent(category != null ? category : "未分类", c -> new long[1])[0] += entry.getValue()[0];
+                }
+            }, (left, right) -> {
+                right.forEach((category, cents) -> left.computeIfAbsent(category, c -> new long[1])[0] += cents[0]);
+                return left;
+            });
+        Map<String, Double> categoryData = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : byCategory.entrySet()) {
+            categoryData.put(entry.getKey(), entry.getValue()[0] / 100.0);
+        }
+        return categoryData;
+    }
 }
@@ -1,43 +1,137 @@
 package com.accounting.service.local;
 
 import com.accounting.filter.FilterRule;
+import com.accounting.filter.KeywordIndex;
 import com.accounting.model.Transaction;
+import com.accounting.storage.ColumnarSegment;
+import com.accounting.storage.PartitionManifest;
 import com.accounting.storage.StorageManager;
+import com.accounting.storage.TransactionJournal;
+import com.accounting.util.TransactionTypeAdapter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
+import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 本地交易服务类
  * 提供账目的增删改查和高级过滤功能
+ * 持久化采用“按月分区 + 追加日志”：增删改只追加日志，日志过长时只重写有修改的分区
+ * 分区按需加载，按日期范围查询和月度统计只读取涉及的月份，冷分区在内存紧张时被回收
+ * 读取走内存只读视图，仅当磁盘文件被外部修改时才重新解析
+ *
+ * 线程安全：单写者 + 快照读。增删改以及会加载分区的操作持有 StampedLock 写锁串行执行；
+ * 全量/按用户查询读取已发布的不可变快照，不加锁，后台统计分析可与界面编辑并行。
+ * 快照在每次修改后作废，下次读取时重建，读者拿到的总是某一时刻的一致视图。
+ * 关键字倒排索引在首次关键字查询时建立，此后随增删改在写锁内增量维护。
+ * 扫描行数达到并行阈值的过滤在快照上分段并行执行（见 ParallelScan），结果与顺序执行相同。
  */
 public class LocalTransactionService {
+    // 旧版单文件快照与列式段，启动时迁移到按月分区后删除
     private static final String TRANSACTIONS_FILE = "transactions.json";
+    private static final String SEGMENT_FILE = "transactions.seg";
+    private static final String JOURNAL_FILE = "transactions.journal";
+    // 日志条数达到该值时触发压缩；压缩只重写有修改的分区，成本与账本大小无关
+    private static final int MIN_COMPACT_ENTRIES = 1000;
+    // 后台压缩阈值：日志条数或字节数达到其一即合并进分区文件
+    private static final int BACKGROUND_COMPACT_ENTRIES = 200;
+    private static final long BACKGROUND_COMPACT_BYTES = 1024 * 1024;
+    private static final long COMPACT_CHECK_SECONDS = 30;
+    // 批量导入时每批写一次日志
+    private static final int BULK_CHUNK_SIZE = 5000;
+    // 过滤和统计扫描的行数达到该值时改走 fork-join 并行路径
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 50_000;
     private StorageManager storageManager;
     private Gson gson;
-    private List<Transaction> transactions;
+    private final TransactionTypeAdapter transactionAdapter = new TransactionTypeAdapter();
+    private TransactionJournal journal;
+    private final PartitionedLedger ledger;
+    // 单写者锁；StampedLock 不可重入，加锁只在公开方法入口进行
+    private final StampedLock lock = new StampedLock();
+    // 已发布的只读快照，数据变化时置空
+    private volatile Snapshot snapshot;
+    // 数据版本，每次修改递增；快照记录生成时的版本，用于判断账本索引是否与快照一致
+    private long version;
+    // 关键字索引，首次关键字查询前为 null；读写都需持锁
+    private KeywordIndex keywordIndex;
+    private ScheduledExecutorService compactor;
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    
+    /**
+     * 某一时刻的不可变账本快照，按用户的子视图和过滤用的索引按需生成并缓存
+     */
+    private static final class Snapshot {
+        final List<Transaction> all;
+        final long version;
+        final Map<String, List<Transaction>> byUser = new ConcurrentHashMap<>();
+        private volatile FilterPlanner planner;
+        
+        Snapshot(List<Transaction> all, long version) {
+            this.all = Collections.unmodifiableList(all);
+            this.version = version;
+        }
+        
+        // 并发首次访问时可能各建一份，结果相同，保留最后发布的即可
+        FilterPlanner planner(Function<FilterRule, List<Transaction>> indexLookup) {
+            FilterPlanner p = planner;
+            if (p == null) {
+                p = new FilterPlanner(all, indexLookup);
+                planner = p;
+            }
+            return p;
+        }
+        
+        List<Transaction> forUser(String userId, int parallelThreshold) {
+            return byUser.computeIfAbsent(userId, id -> Collections.unmodifiableList(
+                ParallelScan.scan(all.size(), parallelThreshold, ArrayList::new, (acc, from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        Transaction t = all.get(i);
+                        if (id.equals(t.getUserId())) acc.add(t);
+                    }
+                }, ParallelScan::concat)));
+        }
+    }
     
     public LocalTransactionService(StorageManager storageManager) {
         this.storageManager = storageManager;
-        JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
-        JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
-        this.gson = new GsonBuilder().registerTypeAdapter(LocalDateTime.class, lts).registerTypeAdapter(LocalDateTime.class, ltd).create();
-        this.transactions = new ArrayList<>();
+        this.gson = new GsonBuilder().registerTypeAdapter(Transaction.class, transactionAdapter).create();
+        this.journal = new TransactionJournal(storageManager, JOURNAL_FILE, gson);
+        this.ledger = new PartitionedLedger(storageManager, transactionAdapter);
         loadTransactions();
     }
     
+    /**
+     * 过滤和统计改走并行路径的行数阈值，Integer.MAX_VALUE 表示始终顺序执行
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+    
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+    
     /**
      * 添加交易
      */
@@ -47,78 +141,143 @@ public class LocalTransactionService {
         }
         transaction.setCreatedAt(LocalDateTime.now());
         transaction.setUpdatedAt(LocalDateTime.now());
-        transactions.add(transaction);
-        saveTransactions();
-        return transaction;
+        return exclusive(() -> {
+            ledger.put(transaction);
+            indexKeywords(transaction);
+            appendJournal(TransactionJournal.Op.ADD, transaction.getId(), transaction, null);
+            return transaction;
+        });
     }
     
     /**
      * 删除交易
      */
     public boolean deleteTransaction(String transactionId) {
-        boolean removed = transactions.removeIf(t -> t.getId().equals(transactionId));
-        if (removed) {
-            saveTransactions();
-        }
-        return removed;
+        return exclusive(() -> {
+            // 同 updateTransaction，分区取自账本而不是可能已被原地修改的记录对象
+            String fromPartition = ledger.keyOf(transactionId);
+            Transaction removed = ledger.remove(transactionId, fromPartition);
+            if (removed == null) {
+                return false;
+            }
+            if (keywordIndex != null) {
+                keywordIndex.remove(transactionId);
+            }
+            appendJournal(TransactionJournal.Op.DELETE, transactionId, null, fromPartition);
+            return true;
+        });
     }
     
     /**
      * 更新交易
      */
     public Transaction updateTransaction(String transactionId, Transaction updatedTransaction) {
-        for (int i = 0; i < transactions.size(); i++) {
-            if (transactions.get(i).getId().equals(transactionId)) {
-                updatedTransaction.setId(transactionId);
-                updatedTransaction.setCreatedAt(transactions.get(i).getCreatedAt());
-                updatedTransaction.setUpdatedAt(LocalDateTime.now());
-                transactions.set(i, updatedTransaction);
-                saveTransactions();
-                return updatedTransaction;
+        return exclusive(() -> {
+            Transaction existing = ledger.get(transactionId);
+            if (existing == null) {
+                return null;
             }
-        }
-        return null;
+            updatedTransaction.setId(transactionId);
+            updatedTransaction.setCreatedAt(existing.getCreatedAt());
+            updatedTransaction.setUpdatedAt(LocalDateTime.now());
+            // 原分区取自账本：调用方可能原地修改了查询得到的对象再传回，此时 existing 的日期已是新值
+            String fromPartition = ledger.keyOf(transactionId);
+            ledger.put(updatedTransaction);
+            indexKeywords(updatedTransaction);
+            appendJournal(TransactionJournal.Op.UPDATE, transactionId, updatedTransaction, fromPartition);
+            return updatedTransaction;
+        });
     }
     
     /**
      * 根据ID查询交易
+     * 返回的是账本中的记录本身；原地修改后须传回 updateTransaction 才会生效并持久化，
+     * 账本、索引和日志都按记录放入时的值定位旧数据
      */
     public Transaction getTransactionById(String transactionId) {
-        return transactions.stream()
-            .filter(t -> t.getId().equals(transactionId))
-            .findFirst()
-            .orElse(null);
+        refreshIfChanged();
+        return exclusive(() -> ledger.get(transactionId));
     }
     
     /**
-     * 获取所有交易
+     * 获取所有交易（只读快照）
      */
     public List<Transaction> getAllTransactions() {
-        loadTransactions();
-        return new ArrayList<>(transactions);
+        return currentSnapshot().all;
     }
     
     /**
-     * 根据用户ID获取交易
+     * 根据用户ID获取交易（只读快照）
      */
     public List<Transaction> getTransactionsByUserId(String userId) {
-        loadTransactions();
-        return transactions.stream()
-            .filter(t -> userId == null || userId.isEmpty() || userId.equals(t.getUserId()))
-            .collect(Collectors.toList());
+        Snapshot s = currentSnapshot();
+        if (userId == null || userId.isEmpty()) {
+            return s.all;
+        }
+        return s.forUser(userId, parallelThreshold);
     }
     
     /**
      * 使用过滤规则查询交易
+     * 由规划器选择选择性最高的索引（日期、分类、类型、金额、关键字）取候选行，其余条件逐行检查
      */
     public List<Transaction> filterTransactions(FilterRule rule) {
         if (rule == null) {
             return getAllTransactions();
         }
-        loadTransactions();
-        return transactions.stream()
-            .filter(rule::test)
-            .collect(Collectors.toList());
+        FilterPlanner planner = planner(currentSnapshot());
+        return planner.execute(planner.plan(rule), parallelThreshold);
+    }
+    
+    /**
+     * 说明规则将如何执行（访问路径、候选行数、残余过滤），用于调试
+     */
+    public String explain(FilterRule rule) {
+        return planner(currentSnapshot()).plan(rule).explain();
+    }
+    
+    private FilterPlanner planner(Snapshot s) {
+        return s.planner(leaf -> lookupIndex(leaf, s.version));
+    }
+    
+    /**
+     * 在账本维护的索引中查找关键字或日期范围叶子：日期走分区内的日期索引，关键字走倒排索引（尚未建立时先建立）
+     * 快照生成后数据又有修改时返回 null，规划器对该条件退回快照自己的索引或逐行检查，保证结果与快照一致
+     */
+    private List<Transaction> lookupIndex(FilterRule leaf, long snapshotVersion) {
+        if (leaf.getKind() == FilterRule.Kind.DATE_RANGE) {
+            return exclusive(() -> version == snapshotVersion
+                ? ledger.range(leaf.getStartDate(), leaf.getEndDate()) : null);
+        }
+        if (leaf.getKind() != FilterRule.Kind.KEYWORD) {
+            return null;
+        }
+        String keyword = leaf.getKeyword();
+        long stamp = lock.readLock();
+        try {
+            if (keywordIndex != null) {
+                return version == snapshotVersion ? keywordIndex.search(keyword) : null;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return exclusive(() -> {
+            if (version != snapshotVersion) {
+                return null;
+            }
+            if (keywordIndex == null) {
+                KeywordIndex index = new KeywordIndex();
+                ledger.toList().forEach(index::put);
+                keywordIndex = index;
+            }
+            return keywordIndex.search(keyword);
+        });
+    }
+    
+    private void indexKeywords(Transaction t) {
+        if (keywordIndex != null) {
+            keywordIndex.put(t);
+        }
     }
     
     /**
@@ -138,10 +297,15 @@ public class LocalTransactionService {
     }
     
     /**
-     * 按日期范围查询
+     * 按日期范围查询，结果按日期升序
+     * 只加载范围内的月份分区，分区内走随增删改维护的日期索引，代价 O(log n + k)，不依赖全量快照
      */
     public List<Transaction> getTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return filterTransactions(FilterRule.dateRange(startDate, endDate));
+        if (startDate == null || endDate == null) {
+            return filterTransactions(FilterRule.dateRange(startDate, endDate));
+        }
+        refreshIfChanged();
+        return exclusive(() -> ledger.range(startDate, endDate));
     }
     
     /**
@@ -202,15 +366,22 @@ public class LocalTransactionService {
      * 从CSV导入
      */
     public List<Transaction> importFromCSV(String filePath) throws IOException {
+        return importFromCSV(filePath, null);
+    }
+    
+    /**
+     * 从CSV导入，按批写入并回调进度 (已处理条数, 总条数)
+     */
+    public List<Transaction> importFromCSV(String filePath, BiConsumer<Integer, Integer> progress) throws IOException {
         List<Transaction> imported = new ArrayList<>();
         Path path = Paths.get(filePath);
         
-        try (Reader reader = Files.newBufferedReader(path)) {
-            List<String> lines = Files.readAllLines(path);
-            
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
             // 跳过表头
-            for (int i = 1; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
                 if (parts.length >= 7) {
                     Transaction t = new Transaction();
                     t.setId(parts[0]);
@@ -228,65 +399,342 @@ public class LocalTransactionService {
             }
         }
         
-        // 添加到现有交易列表
-        for (Transaction t : imported) {
-            addTransaction(t);
-        }
+        // 批量添加到现有交易列表
+        addTransactions(imported, progress);
         
         return imported;
     }
     
     /**
-     * 加载交易数据
+     * 加载交易数据：读取分区清单（必要时从旧的单文件快照迁移）后按顺序重放日志
+     * 分区本身按需加载
      */
     private void loadTransactions() {
         try {
-            String json = storageManager.readFile(TRANSACTIONS_FILE);
-            if (json != null && !json.trim().isEmpty()) {
-                transactions = gson.fromJson(json, new TypeToken<List<Transaction>>(){}.getType());
-                if (transactions == null) {
-                    transactions = new ArrayList<>();
-                }
+            ledger.open();
+            if (!ledger.hasManifest() && storageManager.fileExists(TRANSACTIONS_FILE)) {
+                migrateLegacySnapshot();
             }
+            replayJournal(journal.readAll());
         } catch (Exception e) {
             System.err.println("加载交易数据失败: " + e.getMessage());
-            transactions = new ArrayList<>();
         }
+        keywordIndex = null;
+        invalidateViews();
     }
     
     /**
-     * 保存交易数据
+     * 把旧版单文件快照拆分为按月分区；分区和清单写好后才删除旧文件，中途崩溃下次会重新迁移
+     */
+    private void migrateLegacySnapshot() throws IOException {
+        for (Transaction t : PartitionedLedger.readArray(storageManager, TRANSACTIONS_FILE, transactionAdapter)) {
+            ledger.put(t);
+        }
+        ledger.saveDirty();
+        storageManager.deleteFile(TRANSACTIONS_FILE);
+        storageManager.deleteFile(SEGMENT_FILE);
+    }
+    
+    /**
+     * 仅当分区清单或日志文件被外部修改过时才重新加载
+     * 检查本身不加锁；确需重新加载时取写锁后再确认一次
+     */
+    private void refreshIfChanged() {
+        if (isModifiedExternally()) {
+            exclusive(() -> {
+                if (isModifiedExternally()) {
+                    loadTransactions();
+                }
+                return null;
+            });
+        }
+    }
+    
+    private boolean isModifiedExternally() {
+        return ledger.isModifiedExternally() || storageManager.isModifiedExternally(JOURNAL_FILE);
+    }
+    
+    /**
+     * 在写锁内执行；会加载分区的读取也走这里，因为加载会修改分区缓存
+     */
+    private <T> T exclusive(Supplier<T> action) {
+        long stamp = lock.writeLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 取当前快照；已发布时直接返回，不加锁
+     */
+    private Snapshot currentSnapshot() {
+        refreshIfChanged();
+        Snapshot s = snapshot;
+        if (s != null) {
+            return s;
+        }
+        return exclusive(() -> {
+            if (snapshot == null) {
+                snapshot = new Snapshot(ledger.toList(), version);
+            }
+            return snapshot;
+        });
+    }
+    
+    /**
+     * 获取 [from, to] 月份范围内各分区的列式段，只加载涉及的分区
+     * 段文件头记录了生成时分区的内容指纹，内容未变时可直接映射复用
+     * @param from 起始月份，null 表示不限
+     * @param to 结束月份，null 表示不限；两端都不限时包含无日期的记录
+     */
+    public List<ColumnarSegment> getColumnarSegments(YearMonth from, YearMonth to) {
+        refreshIfChanged();
+        // 段本身只读，可在锁外并行扫描
+        return exclusive(() -> {
+            Collection<String> keys = from == null && to == null ? ledger.keys()
+                : ledger.keys(from != null ? from : YearMonth.of(1, 1), to != null ? to : YearMonth.of(9999, 12));
+            List<ColumnarSegment> result = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                ColumnarSegment seg = ledger.segment(key);
+                if (seg != null) result.add(seg);
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * [from, to] 内各月份的列式段，按月份排序；分区内的记录都属于该月，按月聚合时无需再逐行检查日期
+     */
+    public NavigableMap<YearMonth, ColumnarSegment> getMonthSegments(YearMonth from, YearMonth to) {
+        refreshIfChanged();
+        return exclusive(() -> {
+            NavigableMap<YearMonth, ColumnarSegment> result = new TreeMap<>();
+            for (String key : ledger.keys(from, to)) {
+                ColumnarSegment seg = ledger.segment(key);
+                if (seg != null) result.put(YearMonth.parse(key), seg);
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * 某月分区的摘要（条数与收支合计）副本，无需加载分区；该月无记录时返回 null
+     */
+    public PartitionManifest.Entry getMonthSummary(YearMonth month) {
+        refreshIfChanged();
+        long stamp = lock.readLock();
+        try {
+            PartitionManifest.Entry e = ledger.summary(month);
+            return e != null ? new PartitionManifest.Entry(e) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    private void invalidateViews() {
+        snapshot = null;
+        version++;
+    }
+    
+    /**
+     * 重放日志记录；操作是幂等的，压缩过程中崩溃后重复重放也不会出错
+     */
+    private void replayJournal(List<TransactionJournal.Entry> entries) {
+        for (TransactionJournal.Entry e : entries) {
+            try {
+                replay(e);
+            } catch (IllegalStateException ex) {
+                // 涉及的分区无法读取；日志在能重新读取前不会被压缩清空，修复后重启即可补上
+                System.err.println("重放日志失败: " + ex.getMessage());
+            }
+        }
+    }
+    
+    // 重放一条日志，写入无法读取的分区时抛出 IllegalStateException
+    private void replay(TransactionJournal.Entry e) {
+        switch (e.getOp()) {
+            case ADD:
+                if (e.getTransaction() != null) {
+                    ledger.put(e.getTransaction());
+                }
+                break;
+            case UPDATE:
+                if (e.getTransaction() != null) {
+                    // 重启后ID目录为空，put 只在目标分区内去重；跨月修改须先从原分区移走旧记录
+                    String from = e.getFromPartition();
+                    if (from != null && !from.equals(PartitionManifest.keyOf(e.getTransaction().getDate()))) {
+                        ledger.remove(e.getId(), from);
+                    }
+                    ledger.put(e.getTransaction());
+                }
+                break;
+            case DELETE:
+                ledger.remove(e.getId(), e.getFromPartition());
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * 追加一条日志，必要时触发压缩
+     */
+    private void appendJournal(TransactionJournal.Op op, String id, Transaction transaction, String fromPartition) {
+        invalidateViews();
+        try {
+            journal.append(op, id, transaction, fromPartition);
+            maybeCompact();
+        } catch (Exception e) {
+            System.err.println("写入交易日志失败: " + e.getMessage());
+            saveTransactions();
+        }
+    }
+    
+    private void maybeCompact() {
+        if (journal.size() >= MIN_COMPACT_ENTRIES) {
+            saveTransactions();
+        }
+    }
+    
+    /**
+     * 压缩：只重写有修改的分区和清单，再清空日志
+     * 分区先原子替换再删除日志；写后模式下按顺序在后台执行，分区写失败时日志不会被删除
      */
     private void saveTransactions() {
         try {
-            String json = gson.toJson(transactions);
-            storageManager.writeFile(TRANSACTIONS_FILE, json);
+            ledger.saveDirty();
+            journal.reset();
         } catch (Exception e) {
             System.err.println("保存交易数据失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 立即把日志合并进分区文件
+     */
+    public void compact() {
+        exclusive(() -> {
+            saveTransactions();
+            return null;
+        });
+    }
+    
+    /**
+     * 启动后台压缩：定期检查日志长度，超过阈值时在后台线程合并进分区文件，
+     * 也会把旧的未压缩分区改写为压缩格式
+     */
+    public synchronized void startBackgroundCompaction() {
+        if (compactor != null) return;
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+            COMPACT_CHECK_SECONDS, COMPACT_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public synchronized void stopBackgroundCompaction() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+    }
+    
+    private void compactIfNeeded() {
+        try {
+            exclusive(() -> {
+                StorageManager.FileStamp journalStamp = storageManager.getFileStamp(JOURNAL_FILE);
+                long journalBytes = journalStamp != null ? journalStamp.getSize() : 0;
+                if (journal.size() >= BACKGROUND_COMPACT_ENTRIES || journalBytes >= BACKGROUND_COMPACT_BYTES
+                        || (journal.size() == 0 && ledger.hasUnsavedChanges())) {
+                    saveTransactions();
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("后台压缩失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 批量添加交易
      */
     public void addTransactions(List<Transaction> transactions) {
-        for (Transaction t : transactions) {
-            addTransaction(t);
+        addTransactions(transactions, null);
+    }
+    
+    /**
+     * 批量添加交易：每批只追加一次日志，全部完成后最多压缩一次
+     * 每批单独持锁，批与批之间读者可以拿到已导入部分的快照
+     * @param progress 进度回调 (已处理条数, 总条数)，可为 null
+     */
+    public void addTransactions(List<Transaction> batch, BiConsumer<Integer, Integer> progress) {
+        int total = batch.size();
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < total; from += BULK_CHUNK_SIZE) {
+            int to = Math.min(from + BULK_CHUNK_SIZE, total);
+            List<TransactionJournal.Entry> entries = new ArrayList<>(to - from);
+            for (Transaction t : batch.subList(from, to)) {
+                if (t.getId() == null || t.getId().isEmpty()) {
+                    t.setId(java.util.UUID.randomUUID().toString());
+                }
+                t.setCreatedAt(now);
+                t.setUpdatedAt(now);
+                entries.add(new TransactionJournal.Entry(TransactionJournal.Op.ADD, t.getId(), t));
+            }
+            exclusive(() -> {
+                for (TransactionJournal.Entry e : entries) {
+                    ledger.put(e.getTransaction());
+                    indexKeywords(e.getTransaction());
+                }
+                invalidateViews();
+                try {
+                    journal.appendAll(entries);
+                } catch (Exception e) {
+                    System.err.println("写入交易日志失败: " + e.getMessage());
+                    saveTransactions();
+                }
+                return null;
+            });
+            if (progress != null) {
+                progress.accept(to, total);
+            }
         }
+        exclusive(() -> {
+            maybeCompact();
+            return null;
+        });
     }
     
     /**
      * 清空所有交易
      */
     public void clearAllTransactions() {
-        transactions.clear();
-        saveTransactions();
+        exclusive(() -> {
+            try {
+                ledger.clear();
+                keywordIndex = null;
+                journal.reset();
+            } catch (Exception e) {
+                System.err.println("清空交易数据失败: " + e.getMessage());
+            }
+            invalidateViews();
+            return null;
+        });
     }
     
     /**
      * 获取交易数量
      */
     public int getTransactionCount() {
-        return transactions.size();
+        long stamp = lock.readLock();
+        try {
+            return ledger.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 }
@@ -0,0 +1,115 @@
+package com.accounting.service.local;
+
+import com.accounting.storage.ColumnarSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * 按行号区间的 fork-join 并行扫描
+ * 行数达到阈值时把 [0, n) 二分成子区间交给公共 ForkJoinPool，每个子任务只写自己的累加器，
+ * 合并时总是左区间在前：列表拼接保持原顺序，按分累加的整数求和与顺序无关，结果与顺序扫描完全一致。
+ * 行数低于阈值时在调用线程上顺序扫描，不产生任何任务。
+ */
+final class ParallelScan {
+    // 子任务的最小行数，再小时任务调度的开销超过收益
+    private static final int MIN_CHUNK = 4096;
+
+    /**
+     * 把 [from, to) 内的行累加到 acc
+     */
+    interface RangeScanner<A> {
+        void scan(A acc, int from, int to);
+    }
+
+    /**
+     * 把第 index 个段中 [from, to) 内的行累加到 acc
+     */
+    interface SegmentScanner<A> {
+        void scan(A acc, int index, ColumnarSegment seg, int from, int to);
+    }
+
+    private ParallelScan() {
+    }
+
+    /**
+     * 扫描 [0, n)；merge(left, right) 合并相邻区间的累加器，可以就地修改 left 并返回
+     */
+    static <A> A scan(int n, int threshold, Supplier<A> create, RangeScanner<A> scanner, BinaryOperator<A> merge) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (n < threshold || n < 2 * MIN_CHUNK || parallelism < 2) {
+            A acc = create.get();
+            scanner.scan(acc, 0, n);
+            return acc;
+        }
+        int chunk = Math.max(MIN_CHUNK, n / (parallelism * 4));
+        return ForkJoinPool.commonPool().invoke(new Task<>(0, n, chunk, create, scanner, merge));
+    }
+
+    /**
+     * 把多个列式段首尾相接当作一个行号空间扫描，段较小时也能按总行数切分
+     */
+    static <A> A scanSegments(List<ColumnarSegment> segs, int threshold, Supplier<A> create,
+                              SegmentScanner<A> scanner, BinaryOperator<A> merge) {
+        int[] start = new int[segs.size() + 1];
+        for (int i = 0; i < segs.size(); i++) {
+            start[i + 1] = start[i] + segs.get(i).rowCount();
+        }
+        return scan(start[segs.size()], threshold, create, (acc, from, to) -> {
+            if (from >= to) return;
+            int s = 0;
+            while (start[s + 1] <= from) s++;
+            for (; s < segs.size() && start[s] < to; s++) {
+                int lo = Math.max(from, start[s]) - start[s];
+                int hi = Math.min(to, start[s + 1]) - start[s];
+                if (lo < hi) scanner.scan(acc, s, segs.get(s), lo, hi);
+            }
+        }, merge);
+    }
+
+    /**
+     * 列表累加器的合并：右区间接在左区间之后
+     */
+    static <T> ArrayList<T> concat(ArrayList<T> left, ArrayList<T> right) {
+        left.addAll(right);
+        return left;
+    }
+
+    private static final class Task<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final Supplier<A> create;
+        private final RangeScanner<A> scanner;
+        private final BinaryOperator<A> merge;
+
+        Task(int from, int to, int chunk, Supplier<A> create, RangeScanner<A> scanner, BinaryOperator<A> merge) {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.create = create;
+            this.scanner = scanner;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= chunk) {
+                A acc = create.get();
+                scanner.scan(acc, from, to);
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            Task<A> left = new Task<>(from, mid, chunk, create, scanner, merge);
+            left.fork();
+            A right = new Task<>(mid, to, chunk, create, scanner, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import com.accounting.storage.BlockCompressedFile;
+import com.accounting.storage.ColumnarSegment;
+import com.accounting.storage.PartitionManifest;
+import com.accounting.storage.StorageManager;
+import com.accounting.util.TransactionTypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按月分区的本地账本
+ * 每个分区单独存放为分块压缩文件、按需加载。有未保存修改的分区和最近使用的分区保持强引用，
+ * 其余已加载分区只保留软引用，内存紧张时由 GC 回收，下次访问再从文件读回。
+ * 另维护 id -> 分区 的目录，使按ID查找通常只需加载一个分区；目录只作提示，使用前都会核对。
+ * 分区文件读取失败（损坏、被占用）时不以空分区顶替：读取时跳过该月，写入该月被拒绝，
+ * 且在它能重新读取之前不保存任何分区，磁盘上的数据和未压缩的日志都原样保留。
+ */
+final class PartitionedLedger {
+    // 最近使用的分区中保持强引用的数量
+    private static final int HOT_PARTITIONS = 12;
+
+    private final StorageManager storageManager;
+    private final TransactionTypeAdapter adapter;
+    private final PartitionManifest manifest;
+    private final Map<String, Partition> dirty = new HashMap<>();
+    private final Map<String, Partition> recent = new LinkedHashMap<String, Partition>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Partition> eldest) {
+            return size() > HOT_PARTITIONS;
+        }
+    };
+    private final Map<String, SoftReference<Partition>> cached = new HashMap<>();
+    private final Map<String, SoftReference<ColumnarSegment>> segments = new HashMap<>();
+    private final Map<String, String> idDirectory = new HashMap<>();
+    // 读取失败的分区，不缓存，每次访问时重试
+    private final Set<String> unreadable = new HashSet<>();
+
+    private static final class Partition {
+        final String key;
+        final TransactionIndex index = new TransactionIndex();
+        ColumnarSegment segment;
+
+        Partition(String key) {
+            this.key = key;
+        }
+    }
+
+    PartitionedLedger(StorageManager storageManager, TransactionTypeAdapter adapter) {
+        this.storageManager = storageManager;
+        this.adapter = adapter;
+        this.manifest = new PartitionManifest(storageManager);
+    }
+
+    /**
+     * 读取清单并丢弃所有已加载的分区
+     */
+    void open() throws IOException {
+        dropCaches();
+        manifest.load();
+    }
+
+    /**
+     * 清单不存在时说明还是旧的单文件格式（或全新安装）
+     */
+    boolean hasManifest() {
+        return manifest.exists();
+    }
+
+    boolean isModifiedExternally() {
+        return manifest.isModifiedExternally();
+    }
+
+    int size() {
+        return manifest.totalCount();
+    }
+
+    PartitionManifest.Entry summary(YearMonth month) {
+        return manifest.get(PartitionManifest.keyOf(month));
+    }
+
+    Collection<String> keys() {
+        return manifest.keys();
+    }
+
+    Collection<String> keys(YearMonth from, YearMonth to) {
+        return manifest.keys(from, to);
+    }
+
+    /**
+     * 按ID查找：先按目录定位，找不到时从新到旧逐个加载其余分区
+     */
+    Transaction get(String id) {
+        Partition p = locate(id);
+        return p != null ? p.index.get(id) : null;
+    }
+
+    /**
+     * 记录当前所在分区的键，按放入时的日期而不是记录对象现在的日期（对象可能已被原地修改）；不存在时返回 null
+     */
+    String keyOf(String id) {
+        Partition p = locate(id);
+        return p != null ? p.key : null;
+    }
+
+    /**
+     * 插入或按ID替换；日期改变跨月时会从原分区移走。返回被替换的旧记录
+     * 只在目录已知的分区和目标分区内按ID去重，不为新ID扫描全部分区。
+     * 原地修改后再次放入同一对象时旧值已不可知，涉及的分区摘要按内容重算
+     */
+    Transaction put(Transaction t) {
+        String key = PartitionManifest.keyOf(t.getDate());
+        Partition target = partition(key, true);
+        Transaction old = target.index.get(t.getId());
+        boolean sameInTarget = old == t;
+        if (old == null) {
+            Partition previous = locateKnown(t.getId());
+            if (previous != null && previous != target) {
+                old = previous.index.remove(t.getId());
+                if (old == t) {
+                    resummarize(previous);
+                    markDirty(previous);
+                } else {
+                    onRemoved(previous, old);
+                }
+            }
+        } else if (!sameInTarget) {
+            onRemoved(target, old);
+        }
+        target.index.put(t);
+        if (sameInTarget) {
+            resummarize(target);
+            markDirty(target);
+        } else {
+            onAdded(target, t);
+        }
+        idDirectory.put(t.getId(), key);
+        return old;
+    }
+
+    /**
+     * 按ID删除
+     * @param hintKey 记录所在分区的提示（如日志中记下的分区），可为 null
+     */
+    Transaction remove(String id, String hintKey) {
+        Partition p = null;
+        if (hintKey != null) {
+            p = partition(hintKey, false);
+            if (p != null && !p.index.contains(id)) p = null;
+        }
+        if (p == null) p = locate(id);
+        if (p == null) return null;
+        Transaction removed = p.index.remove(id);
+        onRemoved(p, removed);
+        idDirectory.remove(id);
+        return removed;
+    }
+
+    /**
+     * 全部记录，按月份顺序（会加载全部分区）
+     */
+    List<Transaction> toList() {
+        List<Transaction> list = new ArrayList<>(size());
+        for (String key : manifest.keys()) {
+            Partition p = partition(key, false);
+            if (p != null) p.index.forEach(list::add);
+        }
+        return list;
+    }
+
+    /**
+     * [from, to] 月份范围内的记录，只加载涉及的分区
+     */
+    List<Transaction> range(YearMonth from, YearMonth to) {
+        List<Transaction> list = new ArrayList<>();
+        for (String key : manifest.keys(from, to)) {
+            Partition p = partition(key, false);
+            if (p != null) p.index.forEach(list::add);
+        }
+        return list;
+    }
+
+    /**
+     * 日期在 [from, to] 内的记录，按日期升序；只加载涉及的月份分区，分区内走日期索引
+     */
+    List<Transaction> range(LocalDateTime from, LocalDateTime to) {
+        List<Transaction> list = new ArrayList<>();
+        for (String key : manifest.keys(YearMonth.from(from), YearMonth.from(to))) {
+            Partition p = partition(key, false);
+            if (p != null) p.index.forEachInRange(from, to, list::add);
+        }
+        return list;
+    }
+
+    /**
+     * 分区的列式段：分区已加载时由内存编码；未加载时优先映射清单指纹一致的段文件，无需解析 JSON
+     */
+    ColumnarSegment segment(String key) {
+        PartitionManifest.Entry info = manifest.get(key);
+        if (info == null) return null;
+        Partition p = loadedPartition(key);
+        if (p == null) {
+            SoftReference<ColumnarSegment> ref = segments.get(key);
+            ColumnarSegment seg = ref != null ? ref.get() : null;
+            if (seg != null && seg.getSourceStamp() == info.getFingerprint()) {
+                return seg;
+            }
+            try {
+                MappedByteBuffer mapped = storageManager.mapReadOnly(PartitionManifest.segmentFile(key));
+                if (mapped != null) {
+                    seg = ColumnarSegment.open(mapped);
+                    if (seg.getSourceStamp() == info.getFingerprint()) {
+                        segments.put(key, new SoftReference<>(seg));
+                        return seg;
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("读取列式段失败，将重新生成: " + e.getMessage());
+            }
+            p = partition(key, false);
+            if (p == null) return null;
+        }
+        long stamp = p.index.fingerprint();
+        if (p.segment == null || p.segment.getSourceStamp() != stamp) {
+            ByteBuffer encoded = ColumnarSegment.encode(p.index.toList(), stamp);
+            p.segment = ColumnarSegment.open(encoded);
+            segments.remove(key);
+            try {
+                storageManager.writeBytes(PartitionManifest.segmentFile(key), encoded);
+            } catch (Exception e) {
+                System.err.println("写入列式段失败: " + e.getMessage());
+            }
+        }
+        return p.segment;
+    }
+
+    /**
+     * 保存有修改的分区，再保存清单；空分区连同文件一起删除
+     * 有分区读取失败时先重试，仍失败则整体放弃保存，调用方保留日志
+     */
+    void saveDirty() throws IOException {
+        for (String key : new ArrayList<>(unreadable)) {
+            partition(key, false);
+        }
+        if (!unreadable.isEmpty()) {
+            throw new IOException("分区 " + String.join(", ", unreadable) + " 无法读取，暂不保存");
+        }
+        for (Partition p : new ArrayList<>(dirty.values())) {
+            if (p.index.size() == 0) {
+                deleteFiles(p.key);
+                manifest.remove(p.key);
+                recent.remove(p.key);
+                cached.remove(p.key);
+                segments.remove(p.key);
+            } else {
+                p.index.compact();
+                writePartition(p.key, p.index.toList());
+                if (storageManager.fileExists(PartitionManifest.legacyDataFile(p.key))) {
+                    storageManager.deleteFile(PartitionManifest.legacyDataFile(p.key));
+                }
+            }
+        }
+        manifest.save();
+        dirty.clear();
+    }
+
+    boolean hasUnsavedChanges() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * 删除所有分区文件并清空清单
+     */
+    void clear() throws IOException {
+        for (String key : manifest.keys()) {
+            deleteFiles(key);
+        }
+        dropCaches();
+        manifest.clear();
+        manifest.save();
+    }
+
+    // ---- 分区加载与缓存 ----
+
+    private void dropCaches() {
+        dirty.clear();
+        recent.clear();
+        cached.clear();
+        segments.clear();
+        idDirectory.clear();
+        unreadable.clear();
+    }
+
+    private Partition loadedPartition(String key) {
+        Partition p = dirty.get(key);
+        if (p == null) p = recent.get(key);
+        if (p == null) {
+            SoftReference<Partition> ref = cached.get(key);
+            p = ref != null ? ref.get() : null;
+            if (p != null) recent.put(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * 取分区，必要时从文件加载
+     * 加载失败时返回 null 并记为无法读取；create 为 true（即要写入该分区）时抛出 IllegalStateException
+     * @param create 分区不存在时是否新建空分区
+     */
+    private Partition partition(String key, boolean create) {
+        Partition p = loadedPartition(key);
+        if (p != null) return p;
+        if (manifest.get(key) == null && !create) return null;
+        p = new Partition(key);
+        boolean legacy = false;
+        if (manifest.get(key) != null) {
+            try {
+                if (storageManager.fileExists(PartitionManifest.dataFile(key))) {
+                    p.index.load(readCompressed(key));
+                } else {
+                    p.index.load(readArray(storageManager, PartitionManifest.legacyDataFile(key), adapter));
+                    legacy = p.index.size() > 0;
+                }
+            } catch (Exception e) {
+                System.err.println("加载分区 " + key + " 失败: " + e.getMessage());
+                // 空分区会把摘要清零，保存时再删除或覆盖磁盘上的文件
+                unreadable.add(key);
+                if (create) {
+                    throw new IllegalStateException("分区 " + key + " 无法读取，拒绝写入", e);
+                }
+                return null;
+            }
+            unreadable.remove(key);
+            p.index.forEach(t -> idDirectory.put(t.getId(), key));
+        }
+        resummarize(p);
+        recent.put(key, p);
+        cached.put(key, new SoftReference<>(p));
+        if (legacy) {
+            // 旧的未压缩分区，下次保存时改写为压缩格式
+            markDirty(p);
+        }
+        return p;
+    }
+
+    private Partition locate(String id) {
+        Partition p = locateKnown(id);
+        if (p != null) return p;
+        List<String> keys = new ArrayList<>(manifest.keys());
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            String key = keys.get(i);
+            if (loadedPartition(key) != null) continue;
+            p = partition(key, false);
+            if (p != null && p.index.contains(id)) return p;
+        }
+        return null;
+    }
+
+    private Partition locateKnown(String id) {
+        String key = idDirectory.get(id);
+        if (key == null) return null;
+        Partition p = partition(key, false);
+        if (p != null && p.index.contains(id)) return p;
+        idDirectory.remove(id);
+        return null;
+    }
+
+    // ---- 清单摘要维护 ----
+
+    /**
+     * 按分区实际内容重新计算摘要（加载时校正，崩溃后清单可能落后于分区文件）
+     */
+    private void resummarize(Partition p) {
+        if (p.index.size() == 0 && manifest.get(p.key) == null) return;
+        PartitionManifest.Entry e = manifest.getOrCreate(p.key);
+        e.setCount(0);
+        e.setIncomeCents(0);
+        e.setExpenseCents(0);
+        p.index.forEach(t -> adjust(e, t, 1));
+        e.setFingerprint(p.index.fingerprint());
+    }
+
+    private void onAdded(Partition p, Transaction t) {
+        PartitionManifest.Entry e = manifest.getOrCreate(p.key);
+        adjust(e, t, 1);
+        e.setFingerprint(p.index.fingerprint());
+        markDirty(p);
+    }
+
+    private void onRemoved(Partition p, Transaction t) {
+        if (t == null) return;
+        PartitionManifest.Entry e = manifest.getOrCreate(p.key);
+        adjust(e, t, -1);
+        e.setFingerprint(p.index.fingerprint());
+        markDirty(p);
+    }
+
+    private static void adjust(PartitionManifest.Entry e, Transaction t, int sign) {
+        e.setCount(e.getCount() + sign);
+        long cents = sign * ColumnarSegment.toCents(t.getAmount());
+        if (t.getType() == Transaction.TransactionType.INCOME) {
+            e.setIncomeCents(e.getIncomeCents() + cents);
+        } else if (t.getType() == Transaction.TransactionType.EXPENSE) {
+            e.setExpenseCents(e.getExpenseCents() + cents);
+        }
+    }
+
+    private void markDirty(Partition p) {
+        dirty.put(p.key, p);
+    }
+
+    // ---- 文件读写 ----
+
+    /**
+     * 每条记录序列化为一行 JSON，按块压缩后整体原子写入
+     */
+    private void writePartition(String key, List<Transaction> records) throws IOException {
+        List<String> lines = new ArrayList<>(records.size());
+        for (Transaction t : records) {
+            StringWriter buffer = new StringWriter();
+            JsonWriter out = new JsonWriter(buffer);
+            out.setSerializeNulls(false);
+            adapter.write(out, t);
+            out.flush();
+            lines.add(buffer.toString());
+        }
+        storageManager.writeBytes(PartitionManifest.dataFile(key),
+            BlockCompressedFile.encode(lines, BlockCompressedFile.DEFAULT_RECORDS_PER_BLOCK));
+    }
+
+    private List<Transaction> readCompressed(String key) throws IOException {
+        List<Transaction> loaded = new ArrayList<>();
+        ByteBuffer bytes = storageManager.readBytes(PartitionManifest.dataFile(key));
+        if (bytes == null) {
+            return loaded;
+        }
+        BlockCompressedFile file = BlockCompressedFile.open(bytes);
+        for (int block = 0; block < file.blockCount(); block++) {
+            for (String line : file.readBlock(block)) {
+                Transaction t = adapter.read(new JsonReader(new StringReader(line)));
+                if (t != null) {
+                    loaded.add(t);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void deleteFiles(String key) throws IOException {
+        storageManager.deleteFile(PartitionManifest.dataFile(key));
+        storageManager.deleteFile(PartitionManifest.legacyDataFile(key));
+        storageManager.deleteFile(PartitionManifest.segmentFile(key));
+    }
+
+    /**
+     * 流式解析交易数组文件，逐条构造对象，不把整个文件读成字符串
+     */
+    static List<Transaction> readArray(StorageManager storageManager, String fileName,
+                                       TransactionTypeAdapter adapter) throws IOException {
+        List<Transaction> loaded = new ArrayList<>();
+        try (BufferedReader reader = storageManager.openReader(fileName)) {
+            if (reader == null) {
+                return loaded;
+            }
+            JsonReader in = new JsonReader(reader);
+            try {
+                if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                    return loaded;
+                }
+            } catch (EOFException e) {
+                // 空文件
+                return loaded;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                Transaction t = adapter.read(in);
+                if (t != null) {
+                    loaded.add(t);
+                }
+            }
+            in.endArray();
+        }
+        return loaded;
+    }
+}
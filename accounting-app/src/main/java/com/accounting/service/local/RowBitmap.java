@@ -0,0 +1,342 @@
+package com.accounting.service.local;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 行号位图（压缩位图，Roaring 结构）
+ * 行号按高 16 位分块，每块一个容器：元素不超过 4096 个时用有序 char 数组，否则用 65536 位的位图。
+ * 稀疏集合只占数组大小，稠密集合按位存储，交并差按块进行，不触碰任何记录对象。
+ * 构建完成后不再修改，运算总是返回新位图，可被多个读者并发使用。
+ */
+final class RowBitmap {
+    // 数组容器的最大元素数，超过后改用位图容器（两者此时占用空间相当）
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private static final RowBitmap EMPTY = new RowBitmap();
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    private RowBitmap() {
+    }
+
+    static RowBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 由升序行号 values[from, to) 构建
+     */
+    static RowBitmap ofSorted(int[] values, int from, int to) {
+        RowBitmap b = new RowBitmap();
+        int i = from;
+        while (i < to) {
+            int high = values[i] >>> 16;
+            int j = i;
+            while (j < to && values[j] >>> 16 == high) j++;
+            Container c;
+            if (j - i <= ARRAY_MAX) {
+                char[] low = new char[j - i];
+                for (int k = i; k < j; k++) low[k - i] = (char) values[k];
+                c = new ArrayContainer(low, low.length);
+            } else {
+                long[] words = new long[WORDS];
+                for (int k = i; k < j; k++) words[(values[k] & 0xFFFF) >>> 6] |= 1L << values[k];
+                c = new BitmapContainer(words, j - i);
+            }
+            b.append((char) high, c);
+            i = j;
+        }
+        return b;
+    }
+
+    /**
+     * 由任意顺序的行号构建
+     */
+    static RowBitmap of(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return ofSorted(sorted, 0, sorted.length);
+    }
+
+    /**
+     * [0, n) 全部行号
+     */
+    static RowBitmap range(int n) {
+        RowBitmap b = new RowBitmap();
+        for (int high = 0; high << 16 < n; high++) {
+            int count = Math.min(1 << 16, n - (high << 16));
+            long[] words = new long[WORDS];
+            Arrays.fill(words, 0, count >>> 6, -1L);
+            if ((count & 63) != 0) words[count >>> 6] = (1L << count) - 1;
+            b.append((char) high, new BitmapContainer(words, count));
+        }
+        return b;
+    }
+
+    int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality;
+        return n;
+    }
+
+    /**
+     * 全部行号，升序
+     */
+    int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] n = {0};
+        forEach(v -> out[n[0]++] = v);
+        return out;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 按行号升序遍历
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    RowBitmap and(RowBitmap o) {
+        RowBitmap r = new RowBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < o.size) {
+            if (keys[i] < o.keys[j]) {
+                i++;
+            } else if (keys[i] > o.keys[j]) {
+                j++;
+            } else {
+                r.appendNonEmpty(keys[i], and(containers[i], o.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    RowBitmap or(RowBitmap o) {
+        RowBitmap r = new RowBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < o.size) {
+            if (j >= o.size || (i < size && keys[i] < o.keys[j])) {
+                r.append(keys[i], containers[i++]);
+            } else if (i >= size || keys[i] > o.keys[j]) {
+                r.append(o.keys[j], o.containers[j++]);
+            } else {
+                r.append(keys[i], or(containers[i++], o.containers[j++]));
+            }
+        }
+        return r;
+    }
+
+    RowBitmap andNot(RowBitmap o) {
+        RowBitmap r = new RowBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < o.size && o.keys[j] < keys[i]) j++;
+            if (j < o.size && o.keys[j] == keys[i]) {
+                r.appendNonEmpty(keys[i], andNot(containers[i], o.containers[j]));
+            } else {
+                r.append(keys[i], containers[i]);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 在 [0, n) 中取补集
+     */
+    RowBitmap not(int n) {
+        return range(n).andNot(this);
+    }
+
+    // 容器不可变，可在多个位图间共享
+    private void append(char key, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size++] = c;
+    }
+
+    private void appendNonEmpty(char key, Container c) {
+        if (c.cardinality > 0) append(key, c);
+    }
+
+    private abstract static class Container {
+        final int cardinality;
+
+        Container(int cardinality) {
+            this.cardinality = cardinality;
+        }
+
+        abstract void forEach(int base, IntConsumer action);
+    }
+
+    private static final class ArrayContainer extends Container {
+        final char[] values;
+
+        ArrayContainer(char[] values, int cardinality) {
+            super(cardinality);
+            this.values = values;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) action.accept(base | values[i]);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+
+        BitmapContainer(long[] words, int cardinality) {
+            super(cardinality);
+            this.words = words;
+        }
+
+        boolean contains(char v) {
+            return (words[v >>> 6] & (1L << v)) != 0;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * 元素较少时转为数组容器
+         */
+        Container compact() {
+            if (cardinality > ARRAY_MAX) return this;
+            char[] values = new char[cardinality];
+            int[] n = {0};
+            forEach(0, v -> values[n[0]++] = (char) v);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            char[] out = new char[Math.min(x.cardinality, y.cardinality)];
+            int i = 0, j = 0, n = 0;
+            while (i < x.cardinality && j < y.cardinality) {
+                if (x.values[i] < y.values[j]) i++;
+                else if (x.values[i] > y.values[j]) j++;
+                else {
+                    out[n++] = x.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+        if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+            long[] x = ((BitmapContainer) a).words, y = ((BitmapContainer) b).words;
+            long[] out = new long[WORDS];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                out[w] = x[w] & y[w];
+                n += Long.bitCount(out[w]);
+            }
+            return new BitmapContainer(out, n).compact();
+        }
+        ArrayContainer arr = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+        BitmapContainer bits = (BitmapContainer) (a instanceof BitmapContainer ? a : b);
+        char[] out = new char[arr.cardinality];
+        int n = 0;
+        for (int i = 0; i < arr.cardinality; i++) {
+            if (bits.contains(arr.values[i])) out[n++] = arr.values[i];
+        }
+        return new ArrayContainer(out, n);
+    }
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            if (x.cardinality + y.cardinality > ARRAY_MAX) {
+                return or(toBitmap(x), y);
+            }
+            char[] out = new char[x.cardinality + y.cardinality];
+            int i = 0, j = 0, n = 0;
+            while (i < x.cardinality || j < y.cardinality) {
+                if (j >= y.cardinality || (i < x.cardinality && x.values[i] < y.values[j])) out[n++] = x.values[i++];
+                else if (i >= x.cardinality || x.values[i] > y.values[j]) out[n++] = y.values[j++];
+                else {
+                    out[n++] = x.values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+        BitmapContainer bits = (BitmapContainer) (a instanceof BitmapContainer ? a : b);
+        Container other = a instanceof BitmapContainer ? b : a;
+        long[] out = bits.words.clone();
+        if (other instanceof ArrayContainer) {
+            ArrayContainer arr = (ArrayContainer) other;
+            for (int i = 0; i < arr.cardinality; i++) out[arr.values[i] >>> 6] |= 1L << arr.values[i];
+        } else {
+            long[] y = ((BitmapContainer) other).words;
+            for (int w = 0; w < WORDS; w++) out[w] |= y[w];
+        }
+        int n = 0;
+        for (long word : out) n += Long.bitCount(word);
+        return new BitmapContainer(out, n);
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            char[] out = new char[x.cardinality];
+            int n = 0;
+            if (b instanceof BitmapContainer) {
+                BitmapContainer bits = (BitmapContainer) b;
+                for (int i = 0; i < x.cardinality; i++) {
+                    if (!bits.contains(x.values[i])) out[n++] = x.values[i];
+                }
+            } else {
+                ArrayContainer y = (ArrayContainer) b;
+                int j = 0;
+                for (int i = 0; i < x.cardinality; i++) {
+                    while (j < y.cardinality && y.values[j] < x.values[i]) j++;
+                    if (j >= y.cardinality || y.values[j] != x.values[i]) out[n++] = x.values[i];
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+        long[] out = ((BitmapContainer) a).words.clone();
+        if (b instanceof ArrayContainer) {
+            ArrayContainer y = (ArrayContainer) b;
+            for (int i = 0; i < y.cardinality; i++) out[y.values[i] >>> 6] &= ~(1L << y.values[i]);
+        } else {
+            long[] y = ((BitmapContainer) b).words;
+            for (int w = 0; w < WORDS; w++) out[w] &= ~y[w];
+        }
+        int n = 0;
+        for (long word : out) n += Long.bitCount(word);
+        return new BitmapContainer(out, n).compact();
+    }
+
+    private static BitmapContainer toBitmap(ArrayContainer arr) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < arr.cardinality; i++) words[arr.values[i] >>> 6] |= 1L << arr.values[i];
+        return new BitmapContainer(words, arr.cardinality);
+    }
+}
@@ -0,0 +1,213 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 本地账本内存索引
+ * 账目按槽位顺序存放，删除时只留下空槽；维护 id -> 槽位 的哈希索引，
+ * 使按ID查询、更新、删除都是 O(1)。空槽过多时整理槽位并重建索引。
+ * 同时增量维护内容指纹（各记录哈希之和），用于判断派生缓存（如列式段）是否过期，
+ * 以及按日期排序的 TreeMap（日期 -> 该时刻的记录），日期范围查询为 O(log n + k)。
+ * 每个槽位记下放入时的哈希和日期，撤销时按记下的值扣除，
+ * 调用方原地修改记录后再次 put 同一对象也能正确更新指纹和日期索引。
+ */
+final class TransactionIndex {
+    // 空槽数超过该值且超过存活数时整理
+    private static final int MIN_DEAD_SLOTS = 64;
+
+    private final ArrayList<Slot> slots = new ArrayList<>();
+    private final Map<String, Integer> idToSlot = new HashMap<>();
+    // 以 LocalDateTime 本身为键，与 FilterRule.dateRange 的比较语义完全一致；无日期的记录不在其中
+    private final NavigableMap<LocalDateTime, List<Transaction>> byDate = new TreeMap<>();
+    private int deadSlots;
+    private long fingerprint;
+
+    // 记录及其放入索引时的哈希和日期
+    private static final class Slot {
+        final Transaction transaction;
+        final long hash;
+        final LocalDateTime date;
+
+        Slot(Transaction transaction) {
+            this.transaction = transaction;
+            this.hash = hash(transaction);
+            this.date = transaction.getDate();
+        }
+    }
+
+    /**
+     * 用给定数据重建索引；重复ID以后出现的为准
+     */
+    void load(Collection<Transaction> transactions) {
+        clear();
+        for (Transaction t : transactions) {
+            put(t);
+        }
+    }
+
+    void clear() {
+        slots.clear();
+        idToSlot.clear();
+        byDate.clear();
+        deadSlots = 0;
+        fingerprint = 0;
+    }
+
+    Transaction get(String id) {
+        Integer slot = idToSlot.get(id);
+        return slot != null ? slots.get(slot).transaction : null;
+    }
+
+    boolean contains(String id) {
+        return idToSlot.containsKey(id);
+    }
+
+    /**
+     * 插入或按ID替换，返回被替换的旧记录（原地修改后再次放入同一对象时返回该对象本身）
+     */
+    Transaction put(Transaction t) {
+        Integer slot = idToSlot.get(t.getId());
+        Slot added = new Slot(t);
+        fingerprint += added.hash;
+        if (slot != null) {
+            Slot old = slots.set(slot, added);
+            fingerprint -= old.hash;
+            unindexDate(old);
+            indexDate(added);
+            return old.transaction;
+        }
+        idToSlot.put(t.getId(), slots.size());
+        slots.add(added);
+        indexDate(added);
+        return null;
+    }
+
+    /**
+     * 按ID删除，返回被删除的记录
+     */
+    Transaction remove(String id) {
+        Integer slot = idToSlot.remove(id);
+        if (slot == null) {
+            return null;
+        }
+        Slot removed = slots.set(slot, null);
+        fingerprint -= removed.hash;
+        unindexDate(removed);
+        deadSlots++;
+        if (deadSlots > MIN_DEAD_SLOTS && deadSlots > idToSlot.size()) {
+            compact();
+        }
+        return removed.transaction;
+    }
+
+    /**
+     * 整理槽位：去掉空槽并重建 id -> 槽位 映射
+     */
+    void compact() {
+        if (deadSlots == 0) return;
+        int write = 0;
+        for (int read = 0; read < slots.size(); read++) {
+            Slot s = slots.get(read);
+            if (s != null) {
+                slots.set(write, s);
+                idToSlot.put(s.transaction.getId(), write);
+                write++;
+            }
+        }
+        slots.subList(write, slots.size()).clear();
+        deadSlots = 0;
+    }
+
+    /**
+     * 日期在 [from, to] 内的记录，按日期升序
+     */
+    void forEachInRange(LocalDateTime from, LocalDateTime to, Consumer<Transaction> action) {
+        if (from.isAfter(to)) return;
+        for (Map.Entry<LocalDateTime, List<Transaction>> e : byDate.subMap(from, true, to, true).entrySet()) {
+            for (Transaction t : e.getValue()) {
+                // 记录对象若在索引外被原地改了日期，旧位置上的条目不再有效
+                if (e.getKey().equals(t.getDate())) action.accept(t);
+            }
+        }
+    }
+
+    private void indexDate(Slot s) {
+        if (s.date != null) {
+            byDate.computeIfAbsent(s.date, d -> new ArrayList<>(1)).add(s.transaction);
+        }
+    }
+
+    // 按放入时记下的日期定位，记录对象的日期之后可能已被原地修改
+    private void unindexDate(Slot s) {
+        if (s.date == null) return;
+        List<Transaction> bucket = byDate.get(s.date);
+        if (bucket == null) return;
+        // 按引用删除：同一时刻可能有多条记录
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i) == s.transaction) {
+                bucket.remove(i);
+                break;
+            }
+        }
+        if (bucket.isEmpty()) {
+            byDate.remove(s.date);
+        }
+    }
+
+    /**
+     * 内容指纹：与记录顺序无关，内容相同则指纹相同
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    private static long hash(Transaction t) {
+        long h = 1125899906842597L;
+        h = 31 * h + Objects.hashCode(t.getId());
+        h = 31 * h + Objects.hashCode(t.getUserId());
+        // 指纹会写入段文件头，枚举取名字以保证跨进程稳定
+        h = 31 * h + (t.getType() != null ? t.getType().name().hashCode() : 0);
+        h = 31 * h + Double.hashCode(t.getAmount());
+        h = 31 * h + Objects.hashCode(t.getCategoryId());
+        h = 31 * h + Objects.hashCode(t.getDescription());
+        h = 31 * h + Objects.hashCode(t.getDate());
+        h = 31 * h + Objects.hashCode(t.getCreatedAt());
+        h = 31 * h + Objects.hashCode(t.getUpdatedAt());
+        h = 31 * h + Objects.hashCode(t.getTags());
+        // 混合高低位，避免求和时低位冲突
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    int size() {
+        return idToSlot.size();
+    }
+
+    void forEach(Consumer<Transaction> action) {
+        for (Slot s : slots) {
+            if (s != null) action.accept(s.transaction);
+        }
+    }
+
+    /**
+     * 按插入顺序返回存活记录的副本
+     */
+    List<Transaction> toList() {
+        List<Transaction> list = new ArrayList<>(idToSlot.size());
+        forEach(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,163 @@
+package com.accounting.stats;
+
+import com.accounting.model.Transaction;
+import com.accounting.storage.ColumnarSegment;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按 (月份, 类型) 分桶的收支累加器
+ * 覆盖从 first 起连续 months 个月，每条记录只看一次：按日期算出月份下标，金额按分累加到收入或支出桶，
+ * 各月条数单独计数（含未设类型的记录）。桶都是基本类型数组，一次遍历得到收入、支出、条数全部序列。
+ * 服务端 StatisticService 与本地 LocalStatisticService 都用它汇总，两边结果一致；
+ * 金额按分累加，分段累加后 merge 的结果与一次累加完全相同。非线程安全，并行时每段各用一个再合并。
+ */
+public final class MonthlyAggregates {
+    private final YearMonth first;
+    private final int firstIndex;
+    private final long[] incomeCents;
+    private final long[] expenseCents;
+    private final int[] counts;
+
+    public MonthlyAggregates(YearMonth first, int months) {
+        this.first = first;
+        this.firstIndex = indexOf(first);
+        int n = Math.max(0, months);
+        this.incomeCents = new long[n];
+        this.expenseCents = new long[n];
+        this.counts = new int[n];
+    }
+
+    /**
+     * 截至本月（含）的最近 months 个月
+     */
+    public static MonthlyAggregates lastMonths(int months) {
+        return new MonthlyAggregates(YearMonth.now().minusMonths(Math.max(1, months) - 1), months);
+    }
+
+    /**
+     * 一次遍历累加 transactions，返回 this
+     */
+    public MonthlyAggregates addAll(Iterable<Transaction> transactions) {
+        for (Transaction t : transactions) {
+            add(t);
+        }
+        return this;
+    }
+
+    public int months() {
+        return counts.length;
+    }
+
+    public YearMonth month(int i) {
+        return first.plusMonths(i);
+    }
+
+    /**
+     * 月份下标，不在范围内时返回 -1
+     */
+    public int monthOf(YearMonth ym) {
+        int i = indexOf(ym) - firstIndex;
+        return i >= 0 && i < counts.length ? i : -1;
+    }
+
+    public int monthOf(LocalDateTime date) {
+        if (date == null) return -1;
+        int i = date.getYear() * 12 + date.getMonthValue() - 1 - firstIndex;
+        return i >= 0 && i < counts.length ? i : -1;
+    }
+
+    public void add(Transaction t) {
+        int i = monthOf(t.getDate());
+        if (i < 0) return;
+        counts[i]++;
+        if (t.getType() == Transaction.TransactionType.INCOME) {
+            incomeCents[i] += ColumnarSegment.toCents(t.getAmount());
+        } else if (t.getType() == Transaction.TransactionType.EXPENSE) {
+            expenseCents[i] += ColumnarSegment.toCents(t.getAmount());
+        }
+    }
+
+    /**
+     * 累加第 i 个月已按类型汇总好的金额和条数
+     */
+    public void add(int i, long income, long expense, int count) {
+        incomeCents[i] += income;
+        expenseCents[i] += expense;
+        counts[i] += count;
+    }
+
+    /**
+     * 把范围相同的 other 累加进来，返回 this
+     */
+    public MonthlyAggregates merge(MonthlyAggregates other) {
+        for (int i = 0; i < counts.length; i++) {
+            add(i, other.incomeCents[i], other.expenseCents[i], other.counts[i]);
+        }
+        return this;
+    }
+
+    public long incomeCents(int i) {
+        return incomeCents[i];
+    }
+
+    public long expenseCents(int i) {
+        return expenseCents[i];
+    }
+
+    public int count(int i) {
+        return counts[i];
+    }
+
+    public double income(int i) {
+        return incomeCents[i] / 100.0;
+    }
+
+    public double expense(int i) {
+        return expenseCents[i] / 100.0;
+    }
+
+    public double totalIncome() {
+        long sum = 0;
+        for (long c : incomeCents) sum += c;
+        return sum / 100.0;
+    }
+
+    public double totalExpense() {
+        long sum = 0;
+        for (long c : expenseCents) sum += c;
+        return sum / 100.0;
+    }
+
+    public int totalCount() {
+        int sum = 0;
+        for (int c : counts) sum += c;
+        return sum;
+    }
+
+    /**
+     * 各月支出，每个月都有值（无记录为 0）
+     */
+    public Map<YearMonth, Double> expenses() {
+        Map<YearMonth, Double> m = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            m.put(month(i), expense(i));
+        }
+        return m;
+    }
+
+    public Map<YearMonth, Double> incomes() {
+        Map<YearMonth, Double> m = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            m.put(month(i), income(i));
+        }
+        return m;
+    }
+
+    private static int indexOf(YearMonth ym) {
+        return ym.getYear() * 12 + ym.getMonthValue() - 1;
+    }
+}
@@ -0,0 +1,157 @@
+package com.accounting.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 分块压缩的记录文件
+ * 记录（每条一行 JSON）按固定条数分块，每块单独 Deflate 压缩；文件末尾的块索引记录各块的
+ * 偏移和长度，因此可以只解压需要的块。
+ *
+ * 文件布局：
+ * [头部 32 字节: magic, 版本, 块数, 保留, 索引偏移(long), 记录数(long)]
+ * [块 0 压缩数据]...[块 n-1 压缩数据]
+ * [索引: (偏移 long, 压缩长度 int, 原始长度 int, 记录数 int)×n]
+ */
+public final class BlockCompressedFile {
+    public static final int DEFAULT_RECORDS_PER_BLOCK = 512;
+
+    private static final int MAGIC = 0x49425a42; // "IBZB"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int INDEX_ENTRY_SIZE = 20;
+
+    private final ByteBuffer buf;
+    private final int blocks;
+    private final long records;
+    private final int indexPos;
+
+    private BlockCompressedFile(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不是有效的压缩记录文件");
+        }
+        this.blocks = buf.getInt(8);
+        this.indexPos = (int) buf.getLong(16);
+        this.records = buf.getLong(24);
+        if (indexPos < HEADER_SIZE || (long) indexPos + (long) blocks * INDEX_ENTRY_SIZE > buf.limit()) {
+            throw new IllegalArgumentException("压缩记录文件已损坏");
+        }
+    }
+
+    public static BlockCompressedFile open(ByteBuffer buf) {
+        return new BlockCompressedFile(buf);
+    }
+
+    /**
+     * 把记录编码为分块压缩格式
+     * @param records 每条记录一行，不能包含换行符
+     */
+    public static ByteBuffer encode(List<String> records, int recordsPerBlock) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        List<long[]> index = new ArrayList<>();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] chunk = new byte[8192];
+        try {
+            for (int from = 0; from < records.size(); from += recordsPerBlock) {
+                int to = Math.min(from + recordsPerBlock, records.size());
+                byte[] raw = String.join("\n", records.subList(from, to)).getBytes(StandardCharsets.UTF_8);
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                long offset = HEADER_SIZE + body.size();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(chunk);
+                    body.write(chunk, 0, n);
+                }
+                index.add(new long[] {offset, HEADER_SIZE + body.size() - offset, raw.length, to - from});
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long total = HEADER_SIZE + (long) body.size() + (long) index.size() * INDEX_ENTRY_SIZE;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("压缩记录文件过大: " + total + " 字节");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(index.size()).putInt(0)
+            .putLong(HEADER_SIZE + body.size()).putLong(records.size());
+        out.put(body.toByteArray());
+        for (long[] e : index) {
+            out.putLong(e[0]).putInt((int) e[1]).putInt((int) e[2]).putInt((int) e[3]);
+        }
+        out.flip();
+        return out;
+    }
+
+    public int blockCount() {
+        return blocks;
+    }
+
+    public long recordCount() {
+        return records;
+    }
+
+    /**
+     * 解压单个块，返回其中的记录
+     */
+    public List<String> readBlock(int block) {
+        int entry = indexPos + block * INDEX_ENTRY_SIZE;
+        int offset = (int) buf.getLong(entry);
+        int compressed = buf.getInt(entry + 8);
+        int rawLength = buf.getInt(entry + 12);
+        int count = buf.getInt(entry + 16);
+
+        byte[] input = new byte[compressed];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.get(input);
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != rawLength) {
+                throw new IllegalArgumentException("压缩块 " + block + " 已损坏");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩块 " + block + " 已损坏: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        List<String> lines = new ArrayList<>(count);
+        if (rawLength == 0) return lines;
+        int start = 0;
+        for (int i = 0; i <= rawLength; i++) {
+            if (i == rawLength || raw[i] == '\n') {
+                lines.add(new String(raw, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 依次解压全部块
+     */
+    public List<String> readAll() {
+        List<String> all = new ArrayList<>((int) Math.min(records, Integer.MAX_VALUE));
+        for (int i = 0; i < blocks; i++) {
+            all.addAll(readBlock(i));
+        }
+        return all;
+    }
+}
@@ -0,0 +1,278 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式交易段
+ * 定长列：金额(分, long)、日期(epoch 毫秒, long)、类型(byte)、分类/用户字典编码(int)、
+ * 以及指向字符串堆的偏移(int)。统计时可直接扫描基本类型列，无需构造 Transaction 对象。
+ *
+ * 文件布局：
+ * [头部 64 字节][amount long×n][date long×n][createdAt long×n][updatedAt long×n]
+ * [category int×n][user int×n][id int×n][description int×n][tags int×n][type byte×n]
+ * [字典: 条数 + (长度 + UTF-8)×m][字符串堆: (长度 + UTF-8)×k]
+ */
+public final class ColumnarSegment {
+    public static final long NULL_DATE = Long.MIN_VALUE;
+    public static final int NULL_CODE = -1;
+    public static final byte TYPE_NULL = -1;
+    public static final byte TYPE_EXPENSE = 0;
+    public static final byte TYPE_INCOME = 1;
+
+    private static final int MAGIC = 0x49424353; // "IBCS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private final ByteBuffer buf;
+    private final int rows;
+    private final long sourceStamp;
+    private final int amountPos;
+    private final int datePos;
+    private final int createdPos;
+    private final int updatedPos;
+    private final int categoryPos;
+    private final int userPos;
+    private final int idPos;
+    private final int descriptionPos;
+    private final int tagsPos;
+    private final int typePos;
+    private final int heapPos;
+    private final String[] dictionary;
+    private final Map<String, Integer> codes;
+
+    private ColumnarSegment(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不是有效的列式段文件");
+        }
+        this.rows = buf.getInt(8);
+        this.sourceStamp = buf.getLong(16);
+        int pos = HEADER_SIZE;
+        amountPos = pos; pos += rows * 8;
+        datePos = pos; pos += rows * 8;
+        createdPos = pos; pos += rows * 8;
+        updatedPos = pos; pos += rows * 8;
+        categoryPos = pos; pos += rows * 4;
+        userPos = pos; pos += rows * 4;
+        idPos = pos; pos += rows * 4;
+        descriptionPos = pos; pos += rows * 4;
+        tagsPos = pos; pos += rows * 4;
+        typePos = pos; pos += rows;
+
+        int dictSize = buf.getInt(pos);
+        pos += 4;
+        this.dictionary = new String[dictSize];
+        this.codes = new HashMap<>(dictSize * 2);
+        for (int i = 0; i < dictSize; i++) {
+            int len = buf.getInt(pos);
+            dictionary[i] = decode(pos + 4, len);
+            codes.put(dictionary[i], i);
+            pos += 4 + len;
+        }
+        this.heapPos = pos;
+    }
+
+    /**
+     * 基于已有缓冲区（通常是内存映射文件）打开段
+     */
+    public static ColumnarSegment open(ByteBuffer buf) {
+        return new ColumnarSegment(buf);
+    }
+
+    /**
+     * 将交易列表编码为列式段
+     * @param sourceStamp 数据来源的版本标记，用于判断段是否过期
+     */
+    public static ByteBuffer encode(List<Transaction> transactions, long sourceStamp) {
+        int n = transactions.size();
+        List<String> dict = new ArrayList<>();
+        Map<String, Integer> dictCodes = new HashMap<>();
+        List<byte[]> heap = new ArrayList<>();
+        Map<String, Integer> heapOffsets = new HashMap<>();
+        int[] heapSize = {0};
+        int[] category = new int[n];
+        int[] user = new int[n];
+        int[] id = new int[n];
+        int[] description = new int[n];
+        int[] tags = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            Transaction t = transactions.get(i);
+            category[i] = dictCode(t.getCategoryId(), dict, dictCodes);
+            user[i] = dictCode(t.getUserId(), dict, dictCodes);
+            id[i] = heapOffset(t.getId(), heap, heapOffsets, heapSize);
+            description[i] = heapOffset(t.getDescription(), heap, heapOffsets, heapSize);
+            tags[i] = heapOffset(t.getTags(), heap, heapOffsets, heapSize);
+        }
+
+        List<byte[]> dictBytes = new ArrayList<>(dict.size());
+        int dictLen = 4;
+        for (String s : dict) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            dictBytes.add(b);
+            dictLen += 4 + b.length;
+        }
+
+        long total = HEADER_SIZE + (long) n * (8 * 4 + 4 * 5 + 1) + dictLen + heapSize[0];
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("列式段过大: " + total + " 字节");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(n).putInt(0).putLong(sourceStamp);
+        out.position(HEADER_SIZE);
+        for (Transaction t : transactions) out.putLong(toCents(t.getAmount()));
+        for (Transaction t : transactions) out.putLong(toEpochMillis(t.getDate()));
+        for (Transaction t : transactions) out.putLong(toEpochMillis(t.getCreatedAt()));
+        for (Transaction t : transactions) out.putLong(toEpochMillis(t.getUpdatedAt()));
+        for (int v : category) out.putInt(v);
+        for (int v : user) out.putInt(v);
+        for (int v : id) out.putInt(v);
+        for (int v : description) out.putInt(v);
+        for (int v : tags) out.putInt(v);
+        for (Transaction t : transactions) out.put(typeCode(t.getType()));
+        out.putInt(dict.size());
+        for (byte[] b : dictBytes) out.putInt(b.length).put(b);
+        for (byte[] b : heap) out.putInt(b.length).put(b);
+        out.flip();
+        return out;
+    }
+
+    private static int dictCode(String value, List<String> dict, Map<String, Integer> dictCodes) {
+        if (value == null) return NULL_CODE;
+        Integer code = dictCodes.get(value);
+        if (code == null) {
+            code = dict.size();
+            dict.add(value);
+            dictCodes.put(value, code);
+        }
+        return code;
+    }
+
+    private static int heapOffset(String value, List<byte[]> heap, Map<String, Integer> offsets, int[] heapSize) {
+        if (value == null) return NULL_CODE;
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            offset = heapSize[0];
+            heap.add(b);
+            offsets.put(value, offset);
+            heapSize[0] += 4 + b.length;
+        }
+        return offset;
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static long toEpochMillis(LocalDateTime dateTime) {
+        if (dateTime == null) return NULL_DATE;
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        if (millis == NULL_DATE) return null;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    public static byte typeCode(Transaction.TransactionType type) {
+        if (type == null) return TYPE_NULL;
+        return type == Transaction.TransactionType.INCOME ? TYPE_INCOME : TYPE_EXPENSE;
+    }
+
+    private String decode(int pos, int len) {
+        byte[] b = new byte[len];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        dup.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private String heapString(int offset) {
+        if (offset == NULL_CODE) return null;
+        int pos = heapPos + offset;
+        return decode(pos + 4, buf.getInt(pos));
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public long getSourceStamp() {
+        return sourceStamp;
+    }
+
+    public long amountCents(int row) {
+        return buf.getLong(amountPos + row * 8);
+    }
+
+    public long dateMillis(int row) {
+        return buf.getLong(datePos + row * 8);
+    }
+
+    public byte type(int row) {
+        return buf.get(typePos + row);
+    }
+
+    public int categoryCode(int row) {
+        return buf.getInt(categoryPos + row * 4);
+    }
+
+    public int userCode(int row) {
+        return buf.getInt(userPos + row * 4);
+    }
+
+    /**
+     * 字典值 -> 编码，不存在时返回 NULL_CODE
+     */
+    public int codeOf(String value) {
+        if (value == null) return NULL_CODE;
+        Integer code = codes.get(value);
+        return code != null ? code : NULL_CODE;
+    }
+
+    /**
+     * 编码 -> 字典值
+     */
+    public String dictionaryValue(int code) {
+        return code == NULL_CODE ? null : dictionary[code];
+    }
+
+    public String description(int row) {
+        return heapString(buf.getInt(descriptionPos + row * 4));
+    }
+
+    public String tags(int row) {
+        return heapString(buf.getInt(tagsPos + row * 4));
+    }
+
+    /**
+     * 还原某一行为 Transaction 对象（金额按分精度）
+     */
+    public Transaction materialize(int row) {
+        Transaction t = new Transaction();
+        t.setId(heapString(buf.getInt(idPos + row * 4)));
+        t.setUserId(dictionaryValue(userCode(row)));
+        byte type = type(row);
+        t.setType(type == TYPE_NULL ? null
+                : type == TYPE_INCOME ? Transaction.TransactionType.INCOME : Transaction.TransactionType.EXPENSE);
+        t.setAmount(amountCents(row) / 100.0);
+        t.setCategoryId(dictionaryValue(categoryCode(row)));
+        t.setDescription(description(row));
+        t.setDate(fromEpochMillis(dateMillis(row)));
+        t.setCreatedAt(fromEpochMillis(buf.getLong(createdPos + row * 8)));
+        t.setUpdatedAt(fromEpochMillis(buf.getLong(updatedPos + row * 8)));
+        t.setTags(tags(row));
+        return t;
+    }
+}
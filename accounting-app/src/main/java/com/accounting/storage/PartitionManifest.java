@@ -0,0 +1,217 @@
+package com.accounting.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 按月分区的交易文件清单
+ * 每个分区对应一个分块压缩文件 tx/YYYY-MM.jz（无日期的记录放在 tx/undated.jz），
+ * 清单记录各分区的条数、收支合计和内容指纹，不加载分区即可回答总数和月度合计
+ */
+public class PartitionManifest {
+    public static final String DIR = "tx";
+    public static final String UNDATED = "undated";
+    private static final String MANIFEST_FILE = DIR + "/manifest.json";
+    private static final int FORMAT_VERSION = 1;
+
+    private final StorageManager storageManager;
+    private final Gson gson = new Gson();
+    // 分区键 -> 摘要；键按 "YYYY-MM" 排序即时间顺序，"undated" 排在最后
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * 单个分区的摘要
+     */
+    public static class Entry {
+        @SerializedName("key")
+        private String key;
+
+        @SerializedName("count")
+        private int count;
+
+        @SerializedName("incomeCents")
+        private long incomeCents;
+
+        @SerializedName("expenseCents")
+        private long expenseCents;
+
+        @SerializedName("fingerprint")
+        private long fingerprint;
+
+        public Entry() {
+        }
+
+        public Entry(String key) {
+            this.key = key;
+        }
+
+        public Entry(Entry other) {
+            this.key = other.key;
+            this.count = other.count;
+            this.incomeCents = other.incomeCents;
+            this.expenseCents = other.expenseCents;
+            this.fingerprint = other.fingerprint;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public long getIncomeCents() {
+            return incomeCents;
+        }
+
+        public void setIncomeCents(long incomeCents) {
+            this.incomeCents = incomeCents;
+        }
+
+        public long getExpenseCents() {
+            return expenseCents;
+        }
+
+        public void setExpenseCents(long expenseCents) {
+            this.expenseCents = expenseCents;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public void setFingerprint(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static class Document {
+        @SerializedName("version")
+        private int version;
+
+        @SerializedName("partitions")
+        private List<Entry> partitions;
+    }
+
+    public PartitionManifest(StorageManager storageManager) {
+        this.storageManager = storageManager;
+    }
+
+    /**
+     * 清单文件是否存在（不存在时可能需要从旧的单文件快照迁移）
+     */
+    public boolean exists() {
+        return storageManager.fileExists(MANIFEST_FILE);
+    }
+
+    /**
+     * 读取清单；文件不存在或损坏时为空
+     */
+    public void load() throws IOException {
+        entries.clear();
+        String json = storageManager.readFile(MANIFEST_FILE);
+        if (json == null || json.isBlank()) return;
+        try {
+            Document doc = gson.fromJson(json, Document.class);
+            if (doc == null || doc.partitions == null) return;
+            for (Entry e : doc.partitions) {
+                if (e != null && e.getKey() != null) {
+                    entries.put(e.getKey(), e);
+                }
+            }
+        } catch (JsonParseException e) {
+            System.err.println("读取分区清单失败: " + e.getMessage());
+        }
+    }
+
+    public void save() throws IOException {
+        Document doc = new Document();
+        doc.version = FORMAT_VERSION;
+        doc.partitions = new ArrayList<>(entries.values());
+        storageManager.writeFile(MANIFEST_FILE, gson.toJson(doc));
+    }
+
+    public boolean isModifiedExternally() {
+        return storageManager.isModifiedExternally(MANIFEST_FILE);
+    }
+
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public Entry getOrCreate(String key) {
+        return entries.computeIfAbsent(key, Entry::new);
+    }
+
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 全部分区键，按时间顺序
+     */
+    public Collection<String> keys() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * [from, to] 月份范围内的分区键，按时间顺序；不含无日期分区
+     */
+    public Collection<String> keys(YearMonth from, YearMonth to) {
+        if (from.isAfter(to)) return new ArrayList<>();
+        return new ArrayList<>(entries.subMap(keyOf(from), true, keyOf(to), true).keySet());
+    }
+
+    public int totalCount() {
+        int total = 0;
+        for (Entry e : entries.values()) {
+            total += e.getCount();
+        }
+        return total;
+    }
+
+    /**
+     * 记录日期 -> 分区键
+     */
+    public static String keyOf(LocalDateTime date) {
+        return date == null ? UNDATED : keyOf(YearMonth.from(date));
+    }
+
+    public static String keyOf(YearMonth month) {
+        return String.format("%04d-%02d", month.getYear(), month.getMonthValue());
+    }
+
+    public static String dataFile(String key) {
+        return DIR + "/" + key + ".jz";
+    }
+
+    /**
+     * 早期未压缩的分区文件，加载后会以压缩格式重写
+     */
+    public static String legacyDataFile(String key) {
+        return DIR + "/" + key + ".json";
+    }
+
+    public static String segmentFile(String key) {
+        return DIR + "/" + key + ".seg";
+    }
+}
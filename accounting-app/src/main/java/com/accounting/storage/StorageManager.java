@@ -1,20 +1,73 @@
 package com.accounting.storage;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 存储管理器
  * 负责本地文件的读写操作
+ * <p>
+ * 整文件写入先写临时文件、fsync 后原子重命名，崩溃时不会留下写了一半的文件。
+ * 开启写后模式 (write-behind) 后，写入/追加/删除只进入待写队列，由后台线程在一个
+ * 合并窗口后统一落盘：同一文件的多次整写只保留最后一次，连续追加合并为一次写入和一次 fsync。
+ * 删除是顺序屏障，不跨过删除合并，落盘顺序与调用顺序一致。后台写入失败时按退避间隔重试，
+ * 失败由下一次 {@link #flush()} 抛给调用方。退出前须调用 {@link #flush()} 或 {@link #close()}。
+ * </p>
  */
 public class StorageManager {
     private static final String DATA_DIR = "data";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long DEFAULT_WRITE_BEHIND_MILLIS = 200;
+    private static final long MAX_RETRY_MILLIS = 30_000;
     private Path dataPath;
-    
+
+    // 写后模式
+    private final Object lock = new Object();
+    private final List<PendingOp> pending = new ArrayList<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private ScheduledExecutorService writer;
+    private long writeBehindMillis;
+    private boolean drainScheduled;
+    // 连续失败的后台写入次数，用于计算重试间隔
+    private int failedDrains;
+    // 本管理器最近一次读取或写入后的文件版本戳
+    private final Map<String, FileStamp> knownStamps = new ConcurrentHashMap<>();
+
     public StorageManager() {
-        this.dataPath = Paths.get(DATA_DIR);
+        this(Paths.get(DATA_DIR));
+    }
+
+    /**
+     * 使用指定的数据目录
+     */
+    public StorageManager(Path dataPath) {
+        this.dataPath = dataPath;
         try {
             if (!Files.exists(dataPath)) {
                 Files.createDirectories(dataPath);
@@ -23,51 +76,497 @@ public class StorageManager {
             System.err.println("创建数据目录失败: " + e.getMessage());
         }
     }
-    
+
+    /**
+     * 流式写入回调
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /**
+     * 开启写后模式，使用默认合并窗口
+     */
+    public void enableWriteBehind() {
+        enableWriteBehind(DEFAULT_WRITE_BEHIND_MILLIS);
+    }
+
+    /**
+     * 开启写后模式
+     * @param windowMillis 合并窗口，窗口内的多次写入合并为一次落盘
+     */
+    public void enableWriteBehind(long windowMillis) {
+        synchronized (lock) {
+            if (writer == null) {
+                writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "storage-write-behind");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            this.writeBehindMillis = windowMillis;
+        }
+    }
+
+    public boolean isWriteBehind() {
+        synchronized (lock) {
+            return writer != null;
+        }
+    }
+
     /**
      * 读取文件内容
      */
     public String readFile(String fileName) throws IOException {
+        flush();
         Path filePath = dataPath.resolve(fileName);
         if (!Files.exists(filePath)) {
+            knownStamps.remove(fileName);
             return null;
         }
+        markKnown(fileName);
         return Files.readString(filePath);
     }
-    
+
     /**
      * 写入文件内容
      */
     public void writeFile(String fileName, String content) throws IOException {
+        writeStream(fileName, out -> out.write(content));
+    }
+
+    /**
+     * 流式写入整个文件：临时文件 + fsync + 原子重命名
+     * 写后模式下只入队，回调在后台线程执行，调用方需保证回调使用的数据不再被修改
+     */
+    public void writeStream(String fileName, ContentWriter content) throws IOException {
+        if (enqueue(new PendingOp(OpType.WRITE, fileName, content, null, null))) {
+            return;
+        }
+        doWrite(fileName, content);
+    }
+
+    /**
+     * 写入二进制内容（覆盖原文件）
+     */
+    public void writeBytes(String fileName, ByteBuffer content) throws IOException {
+        ByteBuffer data = content.duplicate();
+        if (enqueue(new PendingOp(OpType.WRITE_BYTES, fileName, null, null, data))) {
+            return;
+        }
+        doWriteBytes(fileName, data);
+    }
+
+    /**
+     * 读取整个文件的二进制内容，文件不存在时返回 null
+     */
+    public ByteBuffer readBytes(String fileName) throws IOException {
+        flush();
+        Path filePath = dataPath.resolve(fileName);
+        if (!Files.exists(filePath)) {
+            knownStamps.remove(fileName);
+            return null;
+        }
+        markKnown(fileName);
+        return ByteBuffer.wrap(Files.readAllBytes(filePath));
+    }
+
+    /**
+     * 以只读方式内存映射整个文件，文件不存在时返回 null
+     */
+    public MappedByteBuffer mapReadOnly(String fileName) throws IOException {
+        flush();
         Path filePath = dataPath.resolve(fileName);
-        Files.writeString(filePath, content);
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * 打开带缓冲的读取流，文件不存在时返回 null
+     * 用于流式解析大文件，避免整文件读入内存
+     */
+    public BufferedReader openReader(String fileName) throws IOException {
+        flush();
+        Path filePath = dataPath.resolve(fileName);
+        if (!Files.exists(filePath)) {
+            knownStamps.remove(fileName);
+            return null;
+        }
+        markKnown(fileName);
+        return Files.newBufferedReader(filePath, StandardCharsets.UTF_8);
     }
-    
+
+    /**
+     * 追加写入多行内容（文件不存在时自动创建）
+     * 写后模式下连续追加会合并为一次写入
+     */
+    public void appendLines(String fileName, List<String> lines) throws IOException {
+        if (enqueue(new PendingOp(OpType.APPEND, fileName, null, new ArrayList<>(lines), null))) {
+            return;
+        }
+        doAppend(fileName, lines);
+    }
+
+    /**
+     * 按行读取文件内容，文件不存在时返回空列表
+     */
+    public List<String> readLines(String fileName) throws IOException {
+        flush();
+        Path filePath = dataPath.resolve(fileName);
+        if (!Files.exists(filePath)) {
+            knownStamps.remove(fileName);
+            return new ArrayList<>();
+        }
+        markKnown(fileName);
+        return Files.readAllLines(filePath, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取文件版本戳（修改时间 + 大小），文件不存在时返回 null
+     */
+    public FileStamp getFileStamp(String fileName) {
+        Path filePath = dataPath.resolve(fileName);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+            return new FileStamp(attrs.lastModifiedTime().toMillis(), attrs.size());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 文件自本管理器最近一次读取/写入后是否被其他程序修改过
+     * 有待写或正在写入的操作时返回 false（内存中的数据比磁盘新）
+     */
+    public boolean isModifiedExternally(String fileName) {
+        synchronized (lock) {
+            if (inFlight.contains(fileName)) return false;
+            for (PendingOp op : pending) {
+                if (op.fileName.equals(fileName)) return false;
+            }
+        }
+        return !Objects.equals(knownStamps.get(fileName), getFileStamp(fileName));
+    }
+
     /**
      * 检查文件是否存在
      */
     public boolean fileExists(String fileName) {
+        synchronized (lock) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                PendingOp op = pending.get(i);
+                if (op.fileName.equals(fileName)) {
+                    return op.type != OpType.DELETE;
+                }
+            }
+        }
         Path filePath = dataPath.resolve(fileName);
         return Files.exists(filePath);
     }
-    
+
     /**
      * 删除文件
      */
     public boolean deleteFile(String fileName) throws IOException {
-        Path filePath = dataPath.resolve(fileName);
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
-            return true;
+        boolean existed = fileExists(fileName);
+        if (enqueue(new PendingOp(OpType.DELETE, fileName, null, null, null))) {
+            return existed;
         }
-        return false;
+        return doDelete(fileName);
     }
-    
+
+    /**
+     * 等待所有待写操作落盘
+     */
+    public void flush() throws IOException {
+        ScheduledExecutorService w;
+        synchronized (lock) {
+            w = writer;
+            if (w == null || (pending.isEmpty() && inFlight.isEmpty())) return;
+        }
+        if (Thread.currentThread().getName().equals("storage-write-behind")) {
+            drain();
+            return;
+        }
+        try {
+            w.submit(() -> {
+                drain();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待写入完成时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("后台写入失败", e.getCause());
+        }
+    }
+
+    /**
+     * 落盘所有待写数据并停止后台线程，之后恢复同步写入
+     */
+    public void close() throws IOException {
+        flush();
+        ScheduledExecutorService w;
+        synchronized (lock) {
+            w = writer;
+            writer = null;
+        }
+        if (w != null) {
+            w.shutdown();
+        }
+    }
+
     /**
      * 获取数据目录路径
      */
     public Path getDataPath() {
         return dataPath;
     }
-}
 
+    // ---- 写后队列 ----
+
+    private enum OpType {
+        WRITE, WRITE_BYTES, APPEND, DELETE
+    }
+
+    private static final class PendingOp {
+        final OpType type;
+        final String fileName;
+        final ContentWriter content;
+        final List<String> lines;
+        final ByteBuffer bytes;
+
+        PendingOp(OpType type, String fileName, ContentWriter content, List<String> lines, ByteBuffer bytes) {
+            this.type = type;
+            this.fileName = fileName;
+            this.content = content;
+            this.lines = lines;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 写后模式下把操作放入队列并合并，返回 false 表示应同步执行
+     */
+    private boolean enqueue(PendingOp op) {
+        synchronized (lock) {
+            if (writer == null) return false;
+            if (op.type == OpType.APPEND) {
+                PendingOp last = pending.isEmpty() ? null : pending.get(pending.size() - 1);
+                if (last != null && last.type == OpType.APPEND && last.fileName.equals(op.fileName)) {
+                    last.lines.addAll(op.lines);
+                } else {
+                    pending.add(op);
+                }
+            } else {
+                // 整写或删除覆盖该文件之前尚未落盘的操作，但只合并最后一个删除之后的部分：
+                // 例如 "写分区 → 删日志 → 再写分区" 若把第一次写分区去掉，日志会先于它覆盖的数据被删除
+                int barrier = pending.size() - 1;
+                while (barrier >= 0 && pending.get(barrier).type != OpType.DELETE) {
+                    barrier--;
+                }
+                Iterator<PendingOp> it = pending.listIterator(barrier + 1);
+                while (it.hasNext()) {
+                    if (it.next().fileName.equals(op.fileName)) it.remove();
+                }
+                pending.add(op);
+            }
+            scheduleDrain(writeBehindMillis);
+            return true;
+        }
+    }
+
+    // 须持有 lock
+    private void scheduleDrain(long delayMillis) {
+        if (writer != null && !drainScheduled) {
+            drainScheduled = true;
+            writer.schedule(this::drainQuietly, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 失败的操作已放回队首并安排了重试，错误由下一次 flush 抛给调用方
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (IOException | RuntimeException e) {
+            // 忽略，等待重试
+        }
+    }
+
+    /**
+     * 按顺序执行一批待写操作；某个操作失败时停止，剩余操作（含失败的）放回队首，
+     * 避免例如快照写失败后仍然删除日志，并按连续失败次数退避后重试
+     */
+    private void drain() throws IOException {
+        List<PendingOp> batch;
+        synchronized (lock) {
+            drainScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            for (PendingOp op : batch) inFlight.add(op.fileName);
+        }
+        int done = 0;
+        try {
+            for (PendingOp op : batch) {
+                switch (op.type) {
+                    case WRITE: doWrite(op.fileName, op.content); break;
+                    case WRITE_BYTES: doWriteBytes(op.fileName, op.bytes); break;
+                    case APPEND: doAppend(op.fileName, op.lines); break;
+                    case DELETE: doDelete(op.fileName); break;
+                    default: break;
+                }
+                done++;
+            }
+        } finally {
+            synchronized (lock) {
+                inFlight.clear();
+                if (done < batch.size()) {
+                    pending.addAll(0, batch.subList(done, batch.size()));
+                    failedDrains++;
+                    scheduleDrain(Math.min(MAX_RETRY_MILLIS,
+                        Math.max(1, writeBehindMillis) << Math.min(failedDrains, 16)));
+                } else {
+                    failedDrains = 0;
+                }
+            }
+        }
+    }
+
+    // ---- 实际写盘 ----
+
+    private void doWrite(String fileName, ContentWriter content) throws IOException {
+        replaceAtomically(fileName, channel -> {
+            BufferedWriter out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            content.writeTo(out);
+            out.flush();
+        });
+    }
+
+    private void doWriteBytes(String fileName, ByteBuffer content) throws IOException {
+        replaceAtomically(fileName, channel -> {
+            ByteBuffer buf = content.duplicate();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        });
+    }
+
+    private interface ChannelWriter {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * 写临时文件并 fsync，再原子替换目标文件；写入或替换失败时删除临时文件，重试不会留下残余
+     */
+    private void replaceAtomically(String fileName, ChannelWriter content) throws IOException {
+        Path target = dataPath.resolve(fileName);
+        Path tmp = dataPath.resolve(fileName + TEMP_SUFFIX);
+        createParentDirectories(target);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.writeTo(channel);
+                channel.force(true);
+            }
+            moveAtomically(tmp, target);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        markKnown(fileName);
+    }
+
+    private void doAppend(String fileName, List<String> lines) throws IOException {
+        Path filePath = dataPath.resolve(fileName);
+        createParentDirectories(filePath);
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        }
+        markKnown(fileName);
+    }
+
+    private boolean doDelete(String fileName) throws IOException {
+        Path filePath = dataPath.resolve(fileName);
+        boolean deleted = Files.deleteIfExists(filePath);
+        knownStamps.remove(fileName);
+        return deleted;
+    }
+
+    // 支持 "tx/2026-10.json" 这类子目录中的文件
+    private void createParentDirectories(Path filePath) throws IOException {
+        Path parent = filePath.getParent();
+        if (parent != null && !Files.isDirectory(parent)) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    private void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void markKnown(String fileName) {
+        FileStamp stamp = getFileStamp(fileName);
+        if (stamp != null) {
+            knownStamps.put(fileName, stamp);
+        } else {
+            knownStamps.remove(fileName);
+        }
+    }
+
+    /**
+     * 文件版本戳，用于判断文件自上次读取后是否被修改
+     */
+    public static final class FileStamp {
+        private final long lastModified;
+        private final long size;
+
+        public FileStamp(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FileStamp)) return false;
+            FileStamp other = (FileStamp) o;
+            return lastModified == other.lastModified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size);
+        }
+    }
+}
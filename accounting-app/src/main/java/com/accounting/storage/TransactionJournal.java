@@ -0,0 +1,137 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 交易追加日志
+ * 每次增删改只追加一行 JSON 记录，启动时按顺序重放，压缩时并入快照后清空
+ */
+public class TransactionJournal {
+    private final StorageManager storageManager;
+    private final String fileName;
+    private final Gson gson;
+    private int size;
+
+    public enum Op {
+        ADD, UPDATE, DELETE
+    }
+
+    /**
+     * 单条日志记录
+     */
+    public static class Entry {
+        @SerializedName("op")
+        private Op op;
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("tx")
+        private Transaction transaction;
+
+        // 删除或跨分区移动前记录所在的分区，重放时据此只加载该分区；旧日志中没有该字段
+        @SerializedName("from")
+        private String fromPartition;
+
+        public Entry() {
+        }
+
+        public Entry(Op op, String id, Transaction transaction) {
+            this(op, id, transaction, null);
+        }
+
+        public Entry(Op op, String id, Transaction transaction, String fromPartition) {
+            this.op = op;
+            this.id = id;
+            this.transaction = transaction;
+            this.fromPartition = fromPartition;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+
+        public String getFromPartition() {
+            return fromPartition;
+        }
+    }
+
+    public TransactionJournal(StorageManager storageManager, String fileName, Gson gson) {
+        this.storageManager = storageManager;
+        this.fileName = fileName;
+        this.gson = gson;
+    }
+
+    /**
+     * 追加一条记录
+     */
+    public void append(Op op, String id, Transaction transaction, String fromPartition) throws IOException {
+        List<Entry> entries = new ArrayList<>(1);
+        entries.add(new Entry(op, id, transaction, fromPartition));
+        appendAll(entries);
+    }
+
+    /**
+     * 批量追加记录（一次文件写入）
+     */
+    public void appendAll(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) return;
+        List<String> lines = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            lines.add(gson.toJson(e));
+        }
+        storageManager.appendLines(fileName, lines);
+        size += entries.size();
+    }
+
+    /**
+     * 读取全部记录；崩溃时写了一半的行会被跳过
+     */
+    public List<Entry> readAll() throws IOException {
+        List<String> lines = storageManager.readLines(fileName);
+        List<Entry> entries = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isBlank()) continue;
+            try {
+                Entry e = gson.fromJson(line, Entry.class);
+                if (e != null && e.getOp() != null && e.getId() != null) {
+                    entries.add(e);
+                }
+            } catch (JsonParseException ex) {
+                System.err.println("跳过损坏的日志记录: " + ex.getMessage());
+            }
+        }
+        size = entries.size();
+        return entries;
+    }
+
+    /**
+     * 压缩完成后清空日志
+     */
+    public void reset() throws IOException {
+        storageManager.deleteFile(fileName);
+        size = 0;
+    }
+
+    /**
+     * 当前日志记录数
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -1,15 +1,19 @@
 package com.accounting.ui;
 
 import com.accounting.model.Transaction;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 桌面端 API 客户端 (Desktop API Client)
@@ -22,6 +26,8 @@ import java.util.Map;
  * </p>
  */
 public class ApiClient {
+    // 拉取交易列表时每页条数
+    public static final int PAGE_SIZE = 500;
     private final String baseUrl;
     // 使用 Java 11+ 标准 HttpClient，无需引入第三方庞大依赖
     private final HttpClient client = HttpClient.newHttpClient();
@@ -83,17 +89,41 @@ public class ApiClient {
      * 获取交易列表
      * <p>
      * 演示了如何在请求头中添加 Bearer Token 进行鉴权。
+     * 内部按页拉取后合并，数据量大时优先使用 {@link #forEachTransactionPage}。
      * </p>
      */
     public List<Transaction> listTransactions() {
+        List<Transaction> all = new ArrayList<>();
+        forEachTransactionPage(PAGE_SIZE, all::addAll);
+        return all;
+    }
+
+    /**
+     * 按页拉取交易列表
+     * <p>
+     * 沿服务端返回的 next_cursor 逐页请求，每页交给 consumer 处理后再取下一页，
+     * 客户端同一时刻只持有一页数据。即使没有数据，consumer 也会收到一次空页。
+     * </p>
+     */
+    public void forEachTransactionPage(int pageSize, Consumer<List<Transaction>> consumer) {
         try {
-            HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/sync/transactions"))
-                    .header("Authorization", "Bearer " + token)
-                    .GET()
-                    .build();
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() != 200) throw new RuntimeException("list failed: " + resp.statusCode());
-            return mapper.readValue(resp.body(), mapper.getTypeFactory().constructCollectionType(List.class, Transaction.class));
+            String cursor = null;
+            do {
+                String url = baseUrl + "/api/sync/transactions?limit=" + pageSize
+                        + (cursor != null ? "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8) : "");
+                HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+                        .header("Authorization", "Bearer " + token)
+                        .GET()
+                        .build();
+                HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                if (resp.statusCode() != 200) throw new RuntimeException("list failed: " + resp.statusCode());
+                JsonNode page = mapper.readTree(resp.body());
+                List<Transaction> items = mapper.convertValue(page.get("items"),
+                        mapper.getTypeFactory().constructCollectionType(List.class, Transaction.class));
+                consumer.accept(items);
+                JsonNode next = page.get("next_cursor");
+                cursor = next != null && !next.isNull() ? next.asText() : null;
+            } while (cursor != null);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
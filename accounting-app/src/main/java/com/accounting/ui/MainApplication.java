@@ -40,6 +40,9 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class MainApplication extends Application {
+    private StorageManager storage;
+    private LocalTransactionService transactions;
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -49,8 +52,11 @@ public class MainApplication extends Application {
         try {
             stage.setTitle("iBudget");
             TabPane tabPane = new TabPane();
-            StorageManager storage = new StorageManager();
+            storage = new StorageManager();
+            storage.enableWriteBehind();
             LocalTransactionService ts = new LocalTransactionService(storage);
+            ts.startBackgroundCompaction();
+            transactions = ts;
             LocalBudgetService bs = new LocalBudgetService(storage, ts);
             LocalStatisticService ss = new LocalStatisticService(ts);
             LocalAIAnalysisService aiService = new LocalAIAnalysisService();
@@ -102,6 +108,14 @@ public class MainApplication extends Application {
         TableView<Transaction> table = new TableView<>();
         ObservableList<Transaction> data = FXCollections.observableArrayList(ts.getAllTransactions());
         table.setItems(data);
+        // 输入即搜索，走本地关键字索引
+        TextField searchField = new TextField();
+        searchField.setPromptText("搜索描述/标签");
+        Runnable refreshTable = () -> {
+            String q = searchField.getText();
+            data.setAll(q == null || q.isBlank() ? ts.getAllTransactions() : ts.searchTransactions(q));
+        };
+        searchField.textProperty().addListener((obs, oldText, newText) -> refreshTable.run());
         TableColumn<Transaction, String> colType = new TableColumn<>("类型");
         colType.setCellValueFactory(new PropertyValueFactory<>("type"));
         TableColumn<Transaction, Double> colAmount = new TableColumn<>("金额");
@@ -127,7 +141,7 @@ public class MainApplication extends Application {
                 Transaction t = new Transaction(username.getText(), typeBox.getValue(), Double.parseDouble(amountField.getText()), categoryField.getText(), descField.getText());
                 t.setDate(LocalDateTime.now());
                 ts.addTransaction(t);
-                data.setAll(ts.getAllTransactions());
+                refreshTable.run();
             } catch (Exception ignored) {}
         });
         Button btnDelete = new Button("删除选中");
@@ -136,7 +150,7 @@ public class MainApplication extends Application {
             Transaction sel = table.getSelectionModel().getSelectedItem();
             if (sel != null) {
                 ts.deleteTransaction(sel.getId());
-                data.setAll(ts.getAllTransactions());
+                refreshTable.run();
             }
         });
         Button btnExport = new Button("导出CSV");
@@ -160,7 +174,7 @@ public class MainApplication extends Application {
                 File f = fc.showOpenDialog(stage);
                 if (f != null) {
                     ts.importFromCSV(f.getAbsolutePath());
-                    data.setAll(ts.getAllTransactions());
+                    refreshTable.run();
                 }
             } catch (Exception ignored) {}
         });
@@ -169,10 +183,11 @@ public class MainApplication extends Application {
         btnPull.setOnAction(e -> {
             try {
                 if (api.isLoggedIn()) {
-                    List<Transaction> remote = api.listTransactions();
+                    // 先取完全部页再替换本地数据，任何一页请求失败时本地数据保持不变
+                    List<Transaction> pulled = api.listTransactions();
                     ts.clearAllTransactions();
-                    ts.addTransactions(remote);
-                    data.setAll(ts.getAllTransactions());
+                    ts.addTransactions(pulled);
+                    refreshTable.run();
                 }
             } catch (Exception ignored) {}
         });
@@ -189,7 +204,7 @@ public class MainApplication extends Application {
         txForm.setSpacing(10);
         HBox txActions = new HBox(btnExport, btnImport, btnPull, btnPush);
         txActions.setSpacing(10);
-        txBox.getChildren().addAll(new Label("交易管理"), table, txForm, txActions);
+        txBox.getChildren().addAll(new Label("交易管理"), searchField, table, txForm, txActions);
         VBox budgetBox = new VBox();
         budgetBox.setSpacing(10);
         budgetBox.setStyle("-fx-padding: 16px;");
@@ -250,9 +265,10 @@ public class MainApplication extends Application {
             aiResult.setVisible(true);
             aiResult.setText("正在调用AI大模型进行深度分析，请稍候...");
             
-            new Thread(() -> {
+            String userId = username.getText().isEmpty() ? "demo" : username.getText();
+            // 后台线程只读账本快照，可与界面上的编辑并行
+            Thread worker = new Thread(() -> {
                 try {
-                    String userId = username.getText().isEmpty() ? "demo" : username.getText();
                     int year = java.time.LocalDate.now().getYear();
                     int month = java.time.LocalDate.now().getMonthValue();
                     
@@ -292,7 +308,9 @@ public class MainApplication extends Application {
                         btnAIAnalyze.setText("🔍 开始AI分析");
                     });
                 }
-            }).start();
+            }, "ai-analysis");
+            worker.setDaemon(true);
+            worker.start();
         });
         
         aiBox.getChildren().addAll(aiTitle, aiDesc, btnAIAnalyze, aiResult);
@@ -509,4 +527,20 @@ public class MainApplication extends Application {
             t.printStackTrace();
         }
     }
+
+    @Override
+    public void stop() {
+        // 退出前合并日志，并把写后队列中的数据落盘
+        if (transactions != null) {
+            transactions.stopBackgroundCompaction();
+            transactions.compact();
+        }
+        if (storage != null) {
+            try {
+                storage.close();
+            } catch (Exception e) {
+                System.err.println("保存数据失败: " + e.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package com.accounting.util;
+
+import com.accounting.model.Budget;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Budget 的手写 Gson 适配器
+ * 字段名与 @SerializedName 保持一致，日期使用 ISO 格式，避免反射开销
+ */
+public class BudgetTypeAdapter extends TypeAdapter<Budget> {
+
+    @Override
+    public void write(JsonWriter out, Budget b) throws IOException {
+        if (b == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(b.getId());
+        out.name("userId").value(b.getUserId());
+        out.name("categoryId").value(b.getCategoryId());
+        out.name("amount").value(b.getAmount());
+        out.name("year").value(b.getYear());
+        out.name("month").value(b.getMonth());
+        out.name("createdAt").value(b.getCreatedAt() != null ? b.getCreatedAt().toString() : null);
+        out.name("updatedAt").value(b.getUpdatedAt() != null ? b.getUpdatedAt().toString() : null);
+        out.name("startDate").value(b.getStartDate() != null ? b.getStartDate().format(LocalDateAdapters.DATE_FMT) : null);
+        out.name("periodUnit").value(b.getPeriodUnit() != null ? b.getPeriodUnit().name() : null);
+        out.name("periodCount").value(b.getPeriodCount());
+        out.endObject();
+    }
+
+    @Override
+    public Budget read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Budget b = new Budget();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                setNull(b, name);
+                continue;
+            }
+            switch (name) {
+                case "id": b.setId(in.nextString()); break;
+                case "userId": b.setUserId(in.nextString()); break;
+                case "categoryId": b.setCategoryId(in.nextString()); break;
+                case "amount": b.setAmount(in.nextDouble()); break;
+                case "year": b.setYear(in.nextInt()); break;
+                case "month": b.setMonth(in.nextInt()); break;
+                case "createdAt": b.setCreatedAt(LocalDateTime.parse(in.nextString())); break;
+                case "updatedAt": b.setUpdatedAt(LocalDateTime.parse(in.nextString())); break;
+                case "startDate": b.setStartDate(LocalDate.parse(in.nextString(), LocalDateAdapters.DATE_FMT)); break;
+                case "periodUnit": b.setPeriodUnit(Budget.PeriodUnit.valueOf(in.nextString())); break;
+                case "periodCount": b.setPeriodCount(in.nextInt()); break;
+                default: in.skipValue(); break;
+            }
+        }
+        in.endObject();
+        return b;
+    }
+
+    private static void setNull(Budget b, String name) {
+        switch (name) {
+            case "id": b.setId(null); break;
+            case "userId": b.setUserId(null); break;
+            case "categoryId": b.setCategoryId(null); break;
+            case "createdAt": b.setCreatedAt(null); break;
+            case "updatedAt": b.setUpdatedAt(null); break;
+            case "startDate": b.setStartDate(null); break;
+            case "periodUnit": b.setPeriodUnit(null); break;
+            case "periodCount": b.setPeriodCount(null); break;
+            default: break;
+        }
+    }
+}
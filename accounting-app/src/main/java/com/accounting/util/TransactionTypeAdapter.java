@@ -0,0 +1,91 @@
+package com.accounting.util;
+
+import com.accounting.model.Transaction;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Transaction 的手写 Gson 适配器
+ * 字段名与 @SerializedName 保持一致，日期使用 ISO 格式，避免反射开销
+ */
+public class TransactionTypeAdapter extends TypeAdapter<Transaction> {
+
+    @Override
+    public void write(JsonWriter out, Transaction t) throws IOException {
+        if (t == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(t.getId());
+        out.name("userId").value(t.getUserId());
+        out.name("type").value(t.getType() != null ? t.getType().name() : null);
+        out.name("amount").value(t.getAmount());
+        out.name("categoryId").value(t.getCategoryId());
+        out.name("description").value(t.getDescription());
+        out.name("date").value(formatDateTime(t.getDate()));
+        out.name("createdAt").value(formatDateTime(t.getCreatedAt()));
+        out.name("updatedAt").value(formatDateTime(t.getUpdatedAt()));
+        out.name("tags").value(t.getTags());
+        out.endObject();
+    }
+
+    @Override
+    public Transaction read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Transaction t = new Transaction();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                if (!"amount".equals(name)) {
+                    setNull(t, name);
+                }
+                continue;
+            }
+            switch (name) {
+                case "id": t.setId(in.nextString()); break;
+                case "userId": t.setUserId(in.nextString()); break;
+                case "type": t.setType(Transaction.TransactionType.valueOf(in.nextString())); break;
+                case "amount": t.setAmount(in.nextDouble()); break;
+                case "categoryId": t.setCategoryId(in.nextString()); break;
+                case "description": t.setDescription(in.nextString()); break;
+                case "date": t.setDate(LocalDateTime.parse(in.nextString())); break;
+                case "createdAt": t.setCreatedAt(LocalDateTime.parse(in.nextString())); break;
+                case "updatedAt": t.setUpdatedAt(LocalDateTime.parse(in.nextString())); break;
+                case "tags": t.setTags(in.nextString()); break;
+                default: in.skipValue(); break;
+            }
+        }
+        in.endObject();
+        return t;
+    }
+
+    private static void setNull(Transaction t, String name) {
+        switch (name) {
+            case "id": t.setId(null); break;
+            case "userId": t.setUserId(null); break;
+            case "type": t.setType(null); break;
+            case "categoryId": t.setCategoryId(null); break;
+            case "description": t.setDescription(null); break;
+            case "date": t.setDate(null); break;
+            case "createdAt": t.setCreatedAt(null); break;
+            case "updatedAt": t.setUpdatedAt(null); break;
+            case "tags": t.setTags(null); break;
+            default: break;
+        }
+    }
+
+    private static String formatDateTime(LocalDateTime value) {
+        return value != null ? value.toString() : null;
+    }
+}
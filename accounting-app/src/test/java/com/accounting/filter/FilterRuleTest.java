@@ -0,0 +1,142 @@
+package com.accounting.filter;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilterRuleTest {
+    private static final int ROWS = 1000;
+
+    /**
+     * 关键字在前组合（TransactionsController 的顺序）：重排后关键字只检查通过了类型和分类的行，
+     * 逐项计数与按组合顺序短路求值比较，结果相同而检查次数更少
+     */
+    @Test
+    public void andChecksCheapSelectiveConjunctsBeforeKeyword() {
+        List<CountingTransaction> rows = rows();
+        FilterRule keyword = FilterRule.byKeyword("午餐");
+        FilterRule category = FilterRule.byCategory("c1");
+        FilterRule type = FilterRule.byType(Transaction.TransactionType.EXPENSE);
+        FilterRule rule = keyword.and(category).and(type);
+
+        Counts reordered = count(rows, r -> rule.test(r));
+        Counts inOrder = count(rows, r -> keyword.test(r) && category.test(r) && type.test(r));
+
+        assertEquals(inOrder.matched, reordered.matched);
+        // 默认估计下顺序为 类型、分类、关键字
+        assertEquals(ROWS, reordered.type);
+        assertEquals(ROWS / 2, reordered.category);
+        assertEquals(ROWS / 20, reordered.keyword);
+        assertEquals(ROWS, inOrder.keyword);
+        assertTrue(reordered.weighted() * 5 < inOrder.weighted());
+    }
+
+    /**
+     * 默认估计先检查类型；统计信息显示支出占九成、c1 只占百分之一时，改为先检查分类
+     */
+    @Test
+    public void statisticsReorderConjunctsByObservedFrequencies() {
+        List<CountingTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(row(i % 100 == 0 ? "c1" : "c0",
+                i % 10 == 1 ? Transaction.TransactionType.INCOME : Transaction.TransactionType.EXPENSE, "晚餐"));
+        }
+        FilterRule rule = FilterRule.byType(Transaction.TransactionType.EXPENSE).and(FilterRule.byCategory("c1"));
+        FilterRule estimated = rule.withStatistics(FilterStatistics.of(new ArrayList<>(rows)));
+
+        Counts byDefault = count(rows, r -> rule.test(r));
+        Counts byStatistics = count(rows, r -> estimated.test(r));
+
+        assertEquals(ROWS / 100, byStatistics.matched);
+        assertEquals(byDefault.matched, byStatistics.matched);
+        assertEquals(ROWS, byDefault.type);
+        assertEquals(ROWS * 9 / 10, byDefault.category);
+        assertEquals(ROWS, byStatistics.category);
+        assertEquals(ROWS / 100, byStatistics.type);
+    }
+
+    private interface Check {
+        boolean test(Transaction t);
+    }
+
+    // 各叶子的检查次数：关键字每次检查恰好读一次标签（标签为 null），分类和类型各读一次
+    private static final class Counts {
+        int keyword;
+        int category;
+        int type;
+        int matched;
+
+        // 按 FilterRule 中各叶子的默认代价加权
+        double weighted() {
+            return keyword * 30.0 + category * 2.0 + type;
+        }
+    }
+
+    private static Counts count(List<CountingTransaction> rows, Check check) {
+        Counts counts = new Counts();
+        for (CountingTransaction r : rows) {
+            r.reset();
+            if (check.test(r)) counts.matched++;
+            counts.keyword += r.tagReads;
+            counts.category += r.categoryReads;
+            counts.type += r.typeReads;
+        }
+        return counts;
+    }
+
+    // 一半支出，支出中十分之一为 c1，c1 中一半描述含关键字
+    private static List<CountingTransaction> rows() {
+        List<CountingTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Transaction.TransactionType type = i % 2 == 0
+                ? Transaction.TransactionType.EXPENSE : Transaction.TransactionType.INCOME;
+            String category = i % 20 == 0 ? "c1" : "c" + (2 + i % 9);
+            rows.add(row(category, type, i % 40 == 0 ? "公司午餐" : "晚餐"));
+        }
+        return rows;
+    }
+
+    private static CountingTransaction row(String categoryId, Transaction.TransactionType type, String description) {
+        CountingTransaction t = new CountingTransaction();
+        t.setCategoryId(categoryId);
+        t.setType(type);
+        t.setDescription(description);
+        t.setAmount(10.0);
+        return t;
+    }
+
+    private static final class CountingTransaction extends Transaction {
+        int tagReads;
+        int categoryReads;
+        int typeReads;
+
+        void reset() {
+            tagReads = 0;
+            categoryReads = 0;
+            typeReads = 0;
+        }
+
+        @Override
+        public String getTags() {
+            tagReads++;
+            return super.getTags();
+        }
+
+        @Override
+        public String getCategoryId() {
+            categoryReads++;
+            return super.getCategoryId();
+        }
+
+        @Override
+        public TransactionType getType() {
+            typeReads++;
+            return super.getType();
+        }
+    }
+}
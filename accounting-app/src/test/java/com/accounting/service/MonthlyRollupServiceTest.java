@@ -0,0 +1,81 @@
+package com.accounting.service;
+
+import com.accounting.model.MonthlyRollup;
+import com.accounting.model.Transaction;
+import com.accounting.model.converter.LocalDateTimeEpochConverter;
+import com.accounting.repository.MonthlyRollupRepository;
+import com.accounting.repository.SyncLogRepository;
+import com.accounting.repository.TransactionRepository;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class MonthlyRollupServiceTest {
+    private static final String[] ZONES = {"UTC", "Asia/Shanghai", "America/Los_Angeles", "Pacific/Kiritimati"};
+
+    /**
+     * 月末 23:30 的记录：无论 JVM 默认时区是什么，year_month 列、读回的日期和汇总增量都落在同一个月
+     */
+    @Test
+    public void lastDayOfMonthAt2330StaysInItsMonthInEveryZone() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            for (String zone : ZONES) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                LocalDateTime date = LocalDateTime.of(2026, 1, 31, 23, 30);
+                Transaction t = transaction(date);
+                assertEquals(zone, "2026-01", t.getYearMonth());
+
+                LocalDateTimeEpochConverter converter = new LocalDateTimeEpochConverter();
+                LocalDateTime reloaded = converter.convertToEntityAttribute(converter.convertToDatabaseColumn(date));
+                assertEquals(zone, "2026-01", Transaction.monthKeyOf(reloaded));
+
+                List<String> incremented = new ArrayList<>();
+                service(incremented).apply(new MonthlyRollupService.Delta().add(t));
+                assertEquals(zone, List.of(MonthlyRollup.keyOf("u1", "2026-01", Transaction.TransactionType.EXPENSE, "food")),
+                    incremented);
+            }
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    private static MonthlyRollupService service(List<String> incremented) {
+        MonthlyRollupRepository rollups = proxy(MonthlyRollupRepository.class, (name, args) -> {
+            if (name.equals("increment")) {
+                incremented.add((String) args[0]);
+                return 1;
+            }
+            return null;
+        });
+        TransactionRepository transactions = proxy(TransactionRepository.class, (name, args) -> null);
+        SyncLogRepository syncLogs = proxy(SyncLogRepository.class, (name, args) -> 0L);
+        return new MonthlyRollupService(rollups, transactions, new StatisticCache(syncLogs));
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (p, m, args) -> handler.invoke(m.getName(), args)));
+    }
+
+    private static Transaction transaction(LocalDateTime date) {
+        Transaction t = new Transaction();
+        t.setId("t1");
+        t.setUserId("u1");
+        t.setType(Transaction.TransactionType.EXPENSE);
+        t.setAmount(30.0);
+        t.setCategoryId("food");
+        t.setDate(date);
+        return t;
+    }
+}
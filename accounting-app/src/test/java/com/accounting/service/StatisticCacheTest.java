@@ -0,0 +1,58 @@
+package com.accounting.service;
+
+import com.accounting.repository.SyncLogRepository;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+
+public class StatisticCacheTest {
+
+    /**
+     * 原归属用户的同步版本不变：计算期间作废该用户，结果不应写入缓存，下次读取要重算
+     */
+    @Test
+    public void invalidateUserDuringComputationDoesNotCacheStaleResult() {
+        StatisticCache cache = new StatisticCache(syncLogs());
+        assertEquals(1, (int) cache.get("u1", "monthly", () -> {
+            cache.invalidate("u1");
+            return 1;
+        }));
+        assertEquals(2, (int) cache.get("u1", "monthly", () -> 2));
+        assertEquals(2, (int) cache.get("u1", "monthly", () -> 3));
+    }
+
+    /**
+     * 公共记录变更不写任何用户的同步日志：计算期间全部作废，结果同样不写入缓存
+     */
+    @Test
+    public void invalidateAllDuringComputationDoesNotCacheStaleResult() {
+        StatisticCache cache = new StatisticCache(syncLogs());
+        assertEquals(1, (int) cache.get("u1", "monthly", () -> {
+            cache.invalidateAll();
+            return 1;
+        }));
+        assertEquals(2, (int) cache.get("u1", "monthly", () -> 2));
+    }
+
+    /**
+     * 作废一个用户不影响其他用户已缓存和正在计算的结果
+     */
+    @Test
+    public void invalidateUserLeavesOtherUsersCached() {
+        StatisticCache cache = new StatisticCache(syncLogs());
+        cache.get("u2", "monthly", () -> 1);
+        assertEquals(5, (int) cache.get("u3", "monthly", () -> {
+            cache.invalidate("u1");
+            return 5;
+        }));
+        assertEquals(1, (int) cache.get("u2", "monthly", () -> 9));
+        assertEquals(5, (int) cache.get("u3", "monthly", () -> 9));
+    }
+
+    private static SyncLogRepository syncLogs() {
+        return (SyncLogRepository) Proxy.newProxyInstance(SyncLogRepository.class.getClassLoader(),
+            new Class<?>[]{SyncLogRepository.class}, (p, m, args) -> 0L);
+    }
+}
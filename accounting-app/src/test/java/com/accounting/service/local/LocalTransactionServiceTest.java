@@ -0,0 +1,160 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import com.accounting.storage.PartitionManifest;
+import com.accounting.storage.StorageManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocalTransactionServiceTest {
+    private Path dataDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("ledger-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * 旧记录已压缩进原月份分区、跨月修改只在日志中时，重启重放后不应留下两份
+     */
+    @Test
+    public void replayMovesUpdatedTransactionAcrossMonths() {
+        LocalTransactionService service = new LocalTransactionService(new StorageManager(dataDir));
+        Transaction t = transaction("t1", LocalDateTime.of(2026, 3, 15, 12, 0));
+        service.addTransaction(t);
+        service.compact();
+
+        Transaction moved = transaction("t1", LocalDateTime.of(2026, 4, 2, 9, 0));
+        service.updateTransaction("t1", moved);
+        assertEquals(1, service.getAllTransactions().size());
+
+        LocalTransactionService reopened = new LocalTransactionService(new StorageManager(dataDir));
+        List<Transaction> all = reopened.getAllTransactions();
+        assertEquals(1, all.size());
+        assertEquals(LocalDateTime.of(2026, 4, 2, 9, 0), all.get(0).getDate());
+    }
+
+    /**
+     * 取出已压缩的记录原地改到下个月再传回更新，重启后原月份分区里的旧副本不应复活
+     */
+    @Test
+    public void replayMovesInPlaceUpdatedTransactionAcrossMonths() {
+        LocalTransactionService service = new LocalTransactionService(new StorageManager(dataDir));
+        service.addTransaction(transaction("t1", LocalDateTime.of(2026, 3, 15, 12, 0)));
+        service.compact();
+
+        Transaction live = service.getTransactionById("t1");
+        live.setDate(LocalDateTime.of(2026, 4, 2, 9, 0));
+        service.updateTransaction("t1", live);
+        assertEquals(1, service.getAllTransactions().size());
+
+        LocalTransactionService reopened = new LocalTransactionService(new StorageManager(dataDir));
+        List<Transaction> all = reopened.getAllTransactions();
+        assertEquals(1, all.size());
+        assertEquals(LocalDateTime.of(2026, 4, 2, 9, 0), all.get(0).getDate());
+    }
+
+    /**
+     * 日志尚未压缩时原地跨月修改，重启后只有新月份的一份
+     */
+    @Test
+    public void replayOfJournalOnlyInPlaceUpdateKeepsOneCopy() {
+        LocalTransactionService service = new LocalTransactionService(new StorageManager(dataDir));
+        Transaction live = service.addTransaction(transaction("t1", LocalDateTime.of(2026, 3, 15, 12, 0)));
+        live.setDate(LocalDateTime.of(2026, 4, 2, 9, 0));
+        service.updateTransaction("t1", live);
+
+        LocalTransactionService reopened = new LocalTransactionService(new StorageManager(dataDir));
+        assertEquals(1, reopened.getAllTransactions().size());
+        assertEquals(1, reopened.getTransactionsByDateRange(
+            LocalDateTime.of(2026, 4, 1, 0, 0), LocalDateTime.of(2026, 4, 30, 23, 59)).size());
+    }
+
+    /**
+     * 原地改了日期但未更新就删除：按记录所在分区删除，重启后不再出现
+     */
+    @Test
+    public void deleteAfterInPlaceMutationRemovesStoredCopy() {
+        LocalTransactionService service = new LocalTransactionService(new StorageManager(dataDir));
+        service.addTransaction(transaction("t1", LocalDateTime.of(2026, 3, 15, 12, 0)));
+        service.compact();
+
+        service.getTransactionById("t1").setDate(LocalDateTime.of(2026, 4, 2, 9, 0));
+        assertTrue(service.deleteTransaction("t1"));
+        service.compact();
+
+        LocalTransactionService reopened = new LocalTransactionService(new StorageManager(dataDir));
+        assertEquals(0, reopened.getAllTransactions().size());
+        assertEquals(0, reopened.getTransactionCount());
+    }
+
+    /**
+     * 分区文件损坏时：拒绝写入该月，压缩不改动磁盘上的文件也不清空日志，文件恢复后数据完整
+     */
+    @Test
+    public void unreadablePartitionIsNeverOverwritten() throws IOException {
+        LocalTransactionService service = new LocalTransactionService(new StorageManager(dataDir));
+        service.addTransaction(transaction("t1", LocalDateTime.of(2026, 3, 15, 12, 0)));
+        service.addTransaction(transaction("t2", LocalDateTime.of(2026, 4, 2, 9, 0)));
+        service.compact();
+
+        Path march = dataDir.resolve(PartitionManifest.dataFile("2026-03"));
+        byte[] original = Files.readAllBytes(march);
+        Files.write(march, new byte[]{1, 2, 3});
+
+        LocalTransactionService reopened = new LocalTransactionService(new StorageManager(dataDir));
+        assertEquals(1, reopened.getAllTransactions().size());
+        assertEquals(1, reopened.getMonthSummary(YearMonth.of(2026, 3)).getCount());
+        try {
+            reopened.addTransaction(transaction("t3", LocalDateTime.of(2026, 3, 20, 8, 0)));
+            fail("写入无法读取的分区应被拒绝");
+        } catch (IllegalStateException expected) {
+            // 拒绝写入
+        }
+        reopened.addTransaction(transaction("t4", LocalDateTime.of(2026, 4, 3, 9, 0)));
+        reopened.compact();
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(march));
+        assertEquals(1, reopened.getMonthSummary(YearMonth.of(2026, 3)).getCount());
+
+        Files.write(march, original);
+        LocalTransactionService repaired = new LocalTransactionService(new StorageManager(dataDir));
+        assertEquals(3, repaired.getAllTransactions().size());
+        repaired.compact();
+        assertEquals(3, new LocalTransactionService(new StorageManager(dataDir)).getAllTransactions().size());
+    }
+
+    private static Transaction transaction(String id, LocalDateTime date) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        t.setUserId("u1");
+        t.setType(Transaction.TransactionType.EXPENSE);
+        t.setAmount(12.5);
+        t.setCategoryId("food");
+        t.setDate(date);
+        return t;
+    }
+}
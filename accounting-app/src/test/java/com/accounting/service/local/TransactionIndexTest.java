@@ -0,0 +1,77 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TransactionIndexTest {
+    private static final LocalDateTime MARCH = LocalDateTime.of(2026, 3, 15, 12, 0);
+    private static final LocalDateTime APRIL = LocalDateTime.of(2026, 4, 2, 9, 0);
+
+    /**
+     * 原地修改后再次放入同一对象：指纹与日期索引都应反映新值
+     */
+    @Test
+    public void reputOfMutatedObjectUpdatesFingerprintAndDateIndex() {
+        TransactionIndex index = new TransactionIndex();
+        Transaction t = transaction("t1", MARCH, 10.0);
+        index.put(t);
+        index.put(transaction("t2", MARCH, 5.0));
+
+        t.setDate(APRIL);
+        t.setAmount(42.0);
+        assertSame(t, index.put(t));
+
+        TransactionIndex fresh = new TransactionIndex();
+        fresh.put(transaction("t1", APRIL, 42.0));
+        fresh.put(transaction("t2", MARCH, 5.0));
+        assertEquals(fresh.fingerprint(), index.fingerprint());
+
+        assertEquals(List.of("t2"), idsInRange(index, MARCH, MARCH));
+        assertEquals(List.of("t1"), idsInRange(index, APRIL, APRIL));
+        assertEquals(List.of("t2", "t1"), idsInRange(index, MARCH.minusYears(1), APRIL.plusYears(1)));
+    }
+
+    /**
+     * 原地修改后删除：按放入时的值撤销，不留下指纹和日期残余
+     */
+    @Test
+    public void removeAfterInPlaceMutationLeavesNothingBehind() {
+        TransactionIndex index = new TransactionIndex();
+        Transaction t = transaction("t1", MARCH, 10.0);
+        index.put(t);
+
+        t.setDate(APRIL);
+        t.setAmount(42.0);
+        index.remove("t1");
+
+        assertEquals(0L, index.fingerprint());
+        assertEquals(List.of(), idsInRange(index, MARCH.minusYears(1), APRIL.plusYears(1)));
+    }
+
+    private static List<String> idsInRange(TransactionIndex index, LocalDateTime from, LocalDateTime to) {
+        List<String> ids = new ArrayList<>();
+        index.forEachInRange(from, to, t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    private static Transaction transaction(String id, LocalDateTime date, double amount) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        t.setUserId("u1");
+        t.setType(Transaction.TransactionType.EXPENSE);
+        t.setAmount(amount);
+        t.setCategoryId("food");
+        t.setDate(date);
+        // 构造时取当前时间，固定下来使内容相同的记录指纹相同
+        t.setCreatedAt(MARCH);
+        t.setUpdatedAt(MARCH);
+        return t;
+    }
+}
@@ -0,0 +1,75 @@
+package com.accounting.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class StorageManagerTest {
+    private Path dataDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("storage-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * 替换目标失败（目标是非空目录）时，二进制和文本写入都不留下临时文件
+     */
+    @Test
+    public void failedMoveRemovesTempFile() throws IOException {
+        StorageManager storage = new StorageManager(dataDir);
+        for (String name : new String[]{"p.jz", "p.json"}) {
+            Path target = dataDir.resolve(name);
+            Files.createDirectories(target);
+            Files.write(target.resolve("keep"), new byte[]{1});
+            try {
+                if (name.endsWith(".jz")) {
+                    storage.writeBytes(name, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+                } else {
+                    storage.writeFile(name, "[]");
+                }
+                fail("替换非空目录应失败");
+            } catch (IOException expected) {
+                // 替换失败
+            }
+            assertFalse(name, Files.exists(dataDir.resolve(name + ".tmp")));
+        }
+    }
+
+    /**
+     * 写入回调失败时同样删除临时文件
+     */
+    @Test
+    public void failedWriteRemovesTempFile() {
+        StorageManager storage = new StorageManager(dataDir);
+        try {
+            storage.writeStream("t.json", out -> {
+                out.write("[");
+                throw new IOException("写入中断");
+            });
+            fail("写入回调抛出的异常应传给调用方");
+        } catch (IOException expected) {
+            // 写入失败
+        }
+        assertFalse(Files.exists(dataDir.resolve("t.json.tmp")));
+    }
+}